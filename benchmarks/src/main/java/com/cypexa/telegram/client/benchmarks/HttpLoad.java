@@ -0,0 +1,230 @@
+package com.cypexa.telegram.client.benchmarks;
+
+import com.cypexa.telegram.client.TelegramClientApplication;
+import com.cypexa.telegram.client.dto.ChatListResponseDto;
+import com.cypexa.telegram.client.dto.ChatResponseDto;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Нагрузочный тест HTTP API: запускает приложение с имитацией TDLib (spring.telegram.client.fake)
+ * и нагружает контроллеры заданным числом одновременных клиентов. Каждый клиент в цикле выбирает
+ * запрос по весам смеси. Для каждого типа запроса выводятся перцентили задержки и доля ошибок
+ * по HTTP-статусам, в том числе ответов TelegramControllerAdvice.
+ * <p>
+ * Параметры - key=value: concurrency (64), warmup (5s), duration (30s),
+ * mix (chats:40,chat:30,message:20,stickers:10,missing:0). Аргументы, начинающиеся с --, передаются
+ * приложению, например {@code --spring.telegram.client.fake.error-rate=0.01}.
+ * <p>
+ * Запуск: {@code java -cp target/benchmarks.jar com.cypexa.telegram.client.benchmarks.HttpLoad concurrency=128 duration=60s}
+ */
+public class HttpLoad {
+
+    private static final String BASE_PATH = "/api/v1/telegram";
+    private static final int CHAT_LIST_SIZE = 100;
+
+    public static void main(String[] args) {
+        Map<String, String> options = new LinkedHashMap<>(Map.of(
+                "concurrency", "64",
+                "warmup", "5s",
+                "duration", "30s",
+                "mix", "chats:40,chat:30,message:20,stickers:10,missing:0"));
+        List<String> applicationArgs = new ArrayList<>(List.of(
+                "--spring.telegram.client.api-id=1",
+                "--spring.telegram.client.api-hash=fake",
+                "--spring.telegram.client.fake.enabled=true",
+                "--server.port=0",
+                "--logging.level.root=WARN",
+                "--logging.level.com.cypexa.telegram.client=WARN"));
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                applicationArgs.add(arg);
+            } else {
+                String[] option = arg.split("=", 2);
+                options.put(option[0], option[1]);
+            }
+        }
+
+        ConfigurableApplicationContext context = SpringApplication.run(TelegramClientApplication.class,
+                applicationArgs.toArray(new String[0]));
+        try {
+            int port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+            run(port, Integer.parseInt(options.get("concurrency")), parseDuration(options.get("warmup")),
+                    parseDuration(options.get("duration")), parseMix(options.get("mix")));
+        } finally {
+            context.close();
+        }
+        System.exit(0);
+    }
+
+    private static void run(int port, int concurrency, Duration warmup, Duration duration, List<Endpoint> mix) {
+        ConnectionProvider connections = ConnectionProvider.builder("load")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        WebClient webClient = WebClient.builder()
+                .baseUrl("http://localhost:" + port + BASE_PATH)
+                .clientConnector(new ReactorClientHttpConnector(HttpClient.create(connections)))
+                .codecs(codecs -> codecs.defaultCodecs().maxInMemorySize(16 << 20))
+                .build();
+
+        // Первый запрос загружает список чатов; дальше запросы идут к известным чатам
+        ChatListResponseDto chatList = webClient.get().uri("/chats?limit={limit}", CHAT_LIST_SIZE)
+                .retrieve().bodyToMono(ChatListResponseDto.class).block(Duration.ofMinutes(1));
+        long[] chatIds = chatList.getChats().stream().mapToLong(ChatResponseDto::getId).toArray();
+        System.out.printf("Loaded %d chats, running %d clients: warmup %s, measurement %s%n",
+                chatIds.length, concurrency, warmup, duration);
+
+        Stats warmupStats = new Stats(mix);
+        drive(webClient, concurrency, warmup, mix, chatIds, warmupStats);
+        Stats stats = new Stats(mix);
+        long startNanos = System.nanoTime();
+        drive(webClient, concurrency, duration, mix, chatIds, stats);
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        stats.print(seconds);
+        connections.dispose();
+    }
+
+    private static void drive(WebClient webClient, int concurrency, Duration duration, List<Endpoint> mix,
+                              long[] chatIds, Stats stats) {
+        long deadline = System.nanoTime() + duration.toNanos();
+        int totalWeight = mix.stream().mapToInt(endpoint -> endpoint.weight).sum();
+        Flux.range(0, concurrency)
+                .flatMap(client -> Mono.defer(() -> {
+                            Endpoint endpoint = pick(mix, totalWeight);
+                            long requestStart = System.nanoTime();
+                            return endpoint.request(webClient, chatIds)
+                                    .exchangeToMono(response -> response.releaseBody().thenReturn(response.statusCode()))
+                                    .onErrorResume(error -> Mono.just(HttpStatusCode.valueOf(599)))
+                                    .doOnNext(status -> stats.record(endpoint, status, System.nanoTime() - requestStart));
+                        })
+                        .repeat(() -> System.nanoTime() < deadline), concurrency)
+                .blockLast();
+    }
+
+    private static Endpoint pick(List<Endpoint> mix, int totalWeight) {
+        int value = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Endpoint endpoint : mix) {
+            value -= endpoint.weight;
+            if (value < 0) {
+                return endpoint;
+            }
+        }
+        return mix.get(mix.size() - 1);
+    }
+
+    private static List<Endpoint> parseMix(String mix) {
+        List<Endpoint> endpoints = new ArrayList<>();
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split(":");
+            int weight = Integer.parseInt(parts[1]);
+            if (weight > 0) {
+                endpoints.add(new Endpoint(EndpointType.valueOf(parts[0].toUpperCase()), weight));
+            }
+        }
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("Empty request mix: " + mix);
+        }
+        return endpoints;
+    }
+
+    private static Duration parseDuration(String value) {
+        return Duration.parse("PT" + value.toUpperCase());
+    }
+
+    private enum EndpointType {
+        // GET /chats
+        CHATS,
+        // GET /chats/{id}
+        CHAT,
+        // POST /chats/{id}/message
+        MESSAGE,
+        // GET /stickers/sets
+        STICKERS,
+        // GET /chats/{id} несуществующего чата - путь ошибки через TelegramControllerAdvice
+        MISSING
+    }
+
+    private record Endpoint(EndpointType type, int weight) {
+
+        WebClient.RequestHeadersSpec<?> request(WebClient webClient, long[] chatIds) {
+            long chatId = chatIds[ThreadLocalRandom.current().nextInt(chatIds.length)];
+            return switch (type) {
+                case CHATS -> webClient.get().uri("/chats?limit={limit}", CHAT_LIST_SIZE);
+                case CHAT -> webClient.get().uri("/chats/{chatId}", chatId);
+                case MESSAGE -> webClient.post().uri("/chats/{chatId}/message", chatId)
+                        .bodyValue(Map.of("text", "Load test message"));
+                case STICKERS -> webClient.get().uri("/stickers/sets");
+                case MISSING -> webClient.get().uri("/chats/{chatId}", Long.MAX_VALUE);
+            };
+        }
+    }
+
+    private static final class Stats {
+        private final Map<EndpointType, Histogram> latencies = new LinkedHashMap<>();
+        private final Map<EndpointType, Map<Integer, LongAdder>> statuses = new LinkedHashMap<>();
+
+        Stats(List<Endpoint> mix) {
+            for (Endpoint endpoint : mix) {
+                latencies.put(endpoint.type, new ConcurrentHistogram(3));
+                Map<Integer, LongAdder> byStatus = new LinkedHashMap<>();
+                for (int status : new int[]{200, 400, 429, 500, 599}) {
+                    byStatus.put(status, new LongAdder());
+                }
+                statuses.put(endpoint.type, byStatus);
+            }
+        }
+
+        void record(Endpoint endpoint, HttpStatusCode status, long latencyNanos) {
+            latencies.get(endpoint.type).recordValue(latencyNanos);
+            LongAdder counter = statuses.get(endpoint.type).get(status.value());
+            if (counter == null) {
+                counter = statuses.get(endpoint.type).get(status.is4xxClientError() ? 400 : 500);
+            }
+            counter.increment();
+        }
+
+        void print(double seconds) {
+            long total = 0;
+            System.out.printf("%-9s %9s %9s %9s %9s %9s %9s %8s %8s %8s %8s %8s%n", "endpoint", "req/s",
+                    "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "2xx %", "400 %", "429 %", "5xx %", "io %");
+            for (Map.Entry<EndpointType, Histogram> entry : latencies.entrySet()) {
+                Histogram histogram = entry.getValue();
+                Map<Integer, LongAdder> byStatus = statuses.get(entry.getKey());
+                long count = histogram.getTotalCount();
+                total += count;
+                System.out.printf("%-9s %9.0f %9.3f %9.3f %9.3f %9.3f %9.3f %8.2f %8.2f %8.2f %8.2f %8.2f%n",
+                        entry.getKey().name().toLowerCase(), count / seconds,
+                        histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(90) / 1e6,
+                        histogram.getValueAtPercentile(99) / 1e6, histogram.getValueAtPercentile(99.9) / 1e6,
+                        histogram.getMaxValue() / 1e6,
+                        percent(byStatus.get(200), count), percent(byStatus.get(400), count),
+                        percent(byStatus.get(429), count), percent(byStatus.get(500), count),
+                        percent(byStatus.get(599), count));
+            }
+            System.out.printf("Total: %d requests in %.1f s, %.0f req/s%n", total, seconds, total / seconds);
+        }
+
+        private static double percent(LongAdder counter, long total) {
+            return total == 0 ? 0 : counter.sum() * 100.0 / total;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.cypexa.telegram.client.benchmarks;
+
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Транспорт TDLib, выдающий записанные обновления в исходном темпе, ускоренном в speed раз.
+ * На запросы клиента (SetTdlibParameters при авторизации и т.п.) сразу отвечает Ok.
+ */
+class ReplayTransport implements Client.Transport {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final TdApi.Object[] updates;
+    private final long[] dueOffsetsNanos;
+    private final Queue<long[]> responses = new ConcurrentLinkedQueue<>();
+    private volatile long startNanos;
+    private volatile boolean started;
+    private volatile int delivered;
+
+    ReplayTransport(TdApi.Object[] updates, long[] timestampsMicros, double speed) {
+        this.updates = updates;
+        this.dueOffsetsNanos = new long[timestampsMicros.length];
+        long first = timestampsMicros.length == 0 ? 0 : timestampsMicros[0];
+        for (int i = 0; i < timestampsMicros.length; i++) {
+            dueOffsetsNanos[i] = (long) ((timestampsMicros[i] - first) * 1000 / speed);
+        }
+    }
+
+    void start() {
+        startNanos = System.nanoTime();
+        started = true;
+    }
+
+    /**
+     * Время, когда обновление должно было быть получено при воспроизведении
+     */
+    long getDueNanos(int index) {
+        return startNanos + dueOffsetsNanos[index];
+    }
+
+    /**
+     * Число обновлений, время которых наступило, но которые еще не выданы клиенту
+     */
+    int getBacklog() {
+        if (!started) {
+            return 0;
+        }
+        int due = Arrays.binarySearch(dueOffsetsNanos, System.nanoTime() - startNanos);
+        due = due < 0 ? -due - 1 : due + 1;
+        return Math.max(0, Math.min(due, updates.length) - delivered);
+    }
+
+    @Override
+    public int createClient() {
+        return 1;
+    }
+
+    @Override
+    public void send(int clientId, long queryId, TdApi.Function function) {
+        responses.add(new long[]{clientId, queryId});
+    }
+
+    @Override
+    public int receive(int[] clientIds, long[] eventIds, TdApi.Object[] events, double timeout) {
+        while (true) {
+            int count = 0;
+            long[] response;
+            while (count < events.length && (response = responses.poll()) != null) {
+                clientIds[count] = (int) response[0];
+                eventIds[count] = response[1];
+                events[count] = new TdApi.Ok();
+                count++;
+            }
+            int next = delivered;
+            if (started && next < updates.length) {
+                long nowOffset = System.nanoTime() - startNanos;
+                while (next < updates.length && count < events.length && dueOffsetsNanos[next] <= nowOffset) {
+                    clientIds[count] = 1;
+                    eventIds[count] = 0;
+                    events[count] = updates[next];
+                    count++;
+                    next++;
+                }
+                delivered = next;
+                if (count == 0 && next < updates.length) {
+                    LockSupport.parkNanos(Math.min(IDLE_PARK_NANOS, dueOffsetsNanos[next] - nowOffset));
+                    continue;
+                }
+            }
+            if (count > 0) {
+                return count;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    @Override
+    public TdApi.Object execute(TdApi.Function function) {
+        return new TdApi.Ok();
+    }
+
+    @Override
+    public void setLogMessageHandler(int maxVerbosityLevel, Client.LogMessageHandler logMessageHandler) {
+    }
+}
@@ -0,0 +1,198 @@
+package com.cypexa.telegram.client.benchmarks;
+
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
+import com.cypexa.telegram.client.dispatch.PartitionedExecutorDispatcher;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.observation.TelegramObservations;
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import com.cypexa.telegram.client.service.TelegramAuthService;
+import com.cypexa.telegram.client.service.TelegramChatService;
+import com.cypexa.telegram.client.service.TelegramUpdateHandler;
+import com.cypexa.telegram.client.trace.UpdateTraceReader;
+import com.cypexa.telegram.client.trace.UpdateTraceWriter;
+import com.cypexa.telegram.client.update.TelegramUpdateBus;
+import com.cypexa.telegram.client.update.UpdateListenerRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.ShardedDispatcher;
+import org.drinkless.tdlib.TdApi;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Воспроизведение записанного потока обновлений через Client и TelegramUpdateHandler.
+ * Обновления выдаются в исходном темпе, ускоренном в speed раз (1, 10, 100), и обрабатываются
+ * настоящими TelegramAuthService и TelegramChatService. В конце выводятся пропускная способность,
+ * глубина очереди диспетчера и задержка обработки (от момента, когда обновление должно было прийти,
+ * до завершения обработчика) по перцентилям.
+ * <p>
+ * Запуск: {@code java -cp target/benchmarks.jar com.cypexa.telegram.client.benchmarks.UpdateReplay trace.bin 10 VIRTUAL}
+ * <br>
+ * Синтетическая запись массовых UpdateChatLastMessage после переподключения:
+ * {@code ... UpdateReplay generate trace.bin 50000 20 10000}
+ */
+public class UpdateReplay {
+
+    private static final long SAMPLE_INTERVAL_MILLIS = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && args[0].equals("generate")) {
+            generate(Path.of(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        if (args.length < 1) {
+            System.err.println("Usage: UpdateReplay <trace> [speed] [RECEIVER|SHARDED|VIRTUAL|SCHEDULER]");
+            System.err.println("       UpdateReplay generate <trace> <chats> <bursts> <burst-size>");
+            System.exit(1);
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1;
+        TelegramClientProperties properties = new TelegramClientProperties();
+        // Транспорт воспроизведения отвечает Ok на любой запрос, поэтому фоновая загрузка списка чатов не закончилась бы
+        properties.getChatList().setPreload(false);
+        if (args.length > 2) {
+            properties.getDispatcher().setMode(TelegramClientProperties.DispatchMode.valueOf(args[2]));
+        }
+        replay(Path.of(args[0]), speed, properties);
+        System.exit(0);
+    }
+
+    private static void replay(Path file, double speed, TelegramClientProperties properties) throws Exception {
+        List<TdApi.Object> updates = new ArrayList<>();
+        List<Long> timestamps = new ArrayList<>();
+        try (UpdateTraceReader reader = new UpdateTraceReader(file)) {
+            while (reader.next()) {
+                updates.add(reader.getUpdate());
+                timestamps.add(reader.getTimestampMicros());
+            }
+        }
+        int total = updates.size();
+        Map<TdApi.Object, Integer> indexes = new IdentityHashMap<>(total * 2);
+        for (int i = 0; i < total; i++) {
+            indexes.put(updates.get(i), i);
+        }
+        ReplayTransport transport = new ReplayTransport(updates.toArray(new TdApi.Object[0]),
+                timestamps.stream().mapToLong(Long::longValue).toArray(), speed);
+        Client.setTransport(transport);
+        IntSupplier queueSize = configureDispatcher(properties.getDispatcher());
+
+        Histogram lag = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(10), 3);
+        Histogram queueDepth = new Histogram(3);
+        LongAdder processed = new LongAdder();
+
+        // Обработчики сервисов регистрируются в реестре, как в приложении; обновления до start() накапливаются
+        UpdateListenerRegistry listenerRegistry = new UpdateListenerRegistry();
+        TelegramMetrics metrics = new TelegramMetrics(new SimpleMeterRegistry(), properties);
+        TelegramUpdateHandler updateHandler = new TelegramUpdateHandler(listenerRegistry,
+                new TelegramUpdateBus(properties), metrics);
+        Client client = Client.create(update -> {
+            updateHandler.handleUpdate(update);
+            Integer index = indexes.get(update);
+            if (index != null) {
+                lag.recordValue(Math.max(0, System.nanoTime() - transport.getDueNanos(index)));
+                processed.increment();
+            }
+        }, null, null);
+        TelegramAuthService authService = new TelegramAuthService(client, properties, metrics);
+        listenerRegistry.register(authService);
+        listenerRegistry.register(new TelegramChatService(client, authService,
+                new AdaptiveConcurrencyLimiter(properties.getLimiter()), new QueryCoalescer(true), metrics,
+                new TelegramObservations(ObservationRegistry.NOOP), properties));
+        listenerRegistry.start();
+
+        System.out.printf("Replaying %d updates from %s at %sx, dispatch mode %s%n",
+                total, file, speed, properties.getDispatcher().getMode());
+        long startNanos = System.nanoTime();
+        transport.start();
+        int maxBacklog = 0;
+        while (processed.sum() < total) {
+            Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+            queueDepth.recordValue(queueSize.getAsInt());
+            maxBacklog = Math.max(maxBacklog, transport.getBacklog());
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        System.out.printf("Processed %d updates in %.3f s: %.0f updates/s%n", total, seconds, total / seconds);
+        System.out.printf("Processing lag, ms: p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n",
+                lag.getValueAtPercentile(50) / 1e6, lag.getValueAtPercentile(90) / 1e6,
+                lag.getValueAtPercentile(99) / 1e6, lag.getValueAtPercentile(99.9) / 1e6, lag.getMaxValue() / 1e6);
+        System.out.printf("Dispatcher queue depth: p50=%d p99=%d max=%d; max receiver backlog: %d%n",
+                queueDepth.getValueAtPercentile(50), queueDepth.getValueAtPercentile(99),
+                queueDepth.getMaxValue(), maxBacklog);
+    }
+
+    private static IntSupplier configureDispatcher(TelegramClientProperties.Dispatcher dispatcher) {
+        switch (dispatcher.getMode()) {
+            case SHARDED: {
+                ShardedDispatcher sharded = new ShardedDispatcher(dispatcher.getThreads(), dispatcher.getQueueCapacity());
+                Client.setDispatcher(sharded);
+                return sharded::getQueueSize;
+            }
+            case VIRTUAL: {
+                PartitionedExecutorDispatcher partitioned = new PartitionedExecutorDispatcher(
+                        Executors.newVirtualThreadPerTaskExecutor(), dispatcher.getPartitions(), dispatcher.getQueueCapacity());
+                Client.setDispatcher(partitioned);
+                return partitioned::getQueueSize;
+            }
+            case SCHEDULER: {
+                PartitionedExecutorDispatcher partitioned = new PartitionedExecutorDispatcher(
+                        Schedulers.newBoundedElastic(dispatcher.getThreads(), dispatcher.getQueueCapacity(),
+                                "tdlib-dispatch", 60, true)::schedule,
+                        dispatcher.getPartitions(), dispatcher.getQueueCapacity());
+                Client.setDispatcher(partitioned);
+                return partitioned::getQueueSize;
+            }
+            default:
+                return () -> 0;
+        }
+    }
+
+    /**
+     * Записывает авторизацию, загрузку chats чатов и bursts всплесков по burstSize UpdateChatLastMessage раз в секунду
+     */
+    private static void generate(Path file, int chats, int bursts, int burstSize) throws IOException {
+        try (UpdateTraceWriter writer = new UpdateTraceWriter(file)) {
+            writer.record(new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateReady()), 0);
+            for (int i = 1; i <= chats; i++) {
+                TdApi.Chat chat = new TdApi.Chat();
+                chat.id = i;
+                chat.type = new TdApi.ChatTypePrivate(i);
+                chat.title = "Chat #" + i;
+                chat.positions = new TdApi.ChatPosition[]{mainPosition(chats - i + 1)};
+                writer.record(new TdApi.UpdateNewChat(chat), i);
+            }
+            long order = chats + 1;
+            long messageId = 1;
+            for (int burst = 1; burst <= bursts; burst++) {
+                long timestampMicros = TimeUnit.SECONDS.toMicros(burst);
+                for (int i = 0; i < burstSize; i++) {
+                    long chatId = 1 + (long) i * 7919 % chats;
+                    TdApi.Message message = new TdApi.Message();
+                    message.id = messageId++;
+                    message.chatId = chatId;
+                    message.date = 1_700_000_000 + burst;
+                    message.content = new TdApi.MessageText(new TdApi.FormattedText("Message " + message.id, new TdApi.TextEntity[0]), null, null);
+                    writer.record(new TdApi.UpdateChatLastMessage(chatId, message,
+                            new TdApi.ChatPosition[]{mainPosition(order++)}), timestampMicros);
+                }
+            }
+        }
+    }
+
+    private static TdApi.ChatPosition mainPosition(long order) {
+        return new TdApi.ChatPosition(new TdApi.ChatListMain(), order, false, null);
+    }
+}
@@ -0,0 +1,58 @@
+package com.cypexa.telegram.client.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сериализация ответа со списком чатов в JSON, как при отдаче через WebFlux
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ChatListSerializationBenchmark {
+
+    @Param({"20", "100", "1000"})
+    int chatCount;
+
+    ObjectMapper objectMapper;
+    ChatListResponseDto response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper();
+        List<ChatResponseDto> chats = new ArrayList<>(chatCount);
+        for (int i = 0; i < chatCount; i++) {
+            ChatResponseDto chat = new ChatResponseDto();
+            chat.setId(i);
+            chat.setTitle("Chat #" + i);
+            chat.setType("private");
+            chat.setLastMessageDate(1_700_000_000 + i);
+            chat.setLastMessageText("Last message in chat #" + i);
+            chats.add(chat);
+        }
+        response = ChatListResponseDto.success(chats, chatCount);
+    }
+
+    @Benchmark
+    public byte[] writeValueAsBytes() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(response);
+    }
+}
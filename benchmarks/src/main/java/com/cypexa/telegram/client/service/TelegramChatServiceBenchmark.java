@@ -0,0 +1,137 @@
+package com.cypexa.telegram.client.service;
+
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
+import com.cypexa.telegram.client.dto.ChatListResponseDto;
+import com.cypexa.telegram.client.dto.ChatResponseDto;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.observation.TelegramObservations;
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.drinkless.tdlib.TdApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Обработка обновлений списка чатов и чтение страницы списка в TelegramChatService.
+ * Список заполняется chatCount чатами через UpdateNewChat, как при загрузке из TDLib;
+ * обновления поднимают случайный чат на верх списка, как при получении нового сообщения.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TelegramChatServiceBenchmark {
+
+    @Param({"50000"})
+    int chatCount;
+
+    TelegramChatService chatService;
+    TdApi.Chat chat;
+    long nextOrder;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        TelegramClientProperties properties = new TelegramClientProperties();
+        // Измеряем путь запроса вместе с ограничителем, как до его выключения по умолчанию
+        properties.getLimiter().setEnabled(true);
+        TelegramMetrics metrics = new TelegramMetrics(new SimpleMeterRegistry(), properties);
+        TelegramAuthService authService = new TelegramAuthService(null, properties, metrics);
+        authService.handleAuthorizationUpdate(new TdApi.AuthorizationStateReady());
+        chatService = new TelegramChatService(null, authService,
+                new AdaptiveConcurrencyLimiter(properties.getLimiter()), new QueryCoalescer(true), metrics,
+                new TelegramObservations(ObservationRegistry.NOOP), properties);
+
+        for (int i = 0; i < chatCount; i++) {
+            chatService.onNewChat(new TdApi.UpdateNewChat(newChat(i + 1, chatCount - i)));
+        }
+        nextOrder = chatCount + 1;
+        chat = newChat(0, 0);
+        chat.lastMessage = newMessage(0);
+    }
+
+    @Benchmark
+    public void updateChatPosition() {
+        long chatId = ThreadLocalRandom.current().nextLong(1, chatCount + 1);
+        chatService.onChatPosition(new TdApi.UpdateChatPosition(chatId, mainPosition(nextOrder++)));
+    }
+
+    @Benchmark
+    public void updateChatLastMessage() {
+        long chatId = ThreadLocalRandom.current().nextLong(1, chatCount + 1);
+        chatService.onChatLastMessage(new TdApi.UpdateChatLastMessage(chatId, newMessage(chatId),
+                new TdApi.ChatPosition[]{mainPosition(nextOrder++)}));
+    }
+
+    @State(Scope.Benchmark)
+    public static class Page {
+        @Param({"20", "100", "1000"})
+        int pageSize;
+    }
+
+    @Benchmark
+    public ChatListResponseDto getChats(Page page) {
+        return chatService.getChats(page.pageSize).block();
+    }
+
+    /**
+     * Обновления позиций одновременно с чтением страниц списка тремя потоками
+     */
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public void contendedUpdate() {
+        updateChatPosition();
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(3)
+    public ChatListResponseDto contendedGetChats() {
+        return chatService.getChats(100).block();
+    }
+
+    @Benchmark
+    public ChatResponseDto convertToDto() {
+        return chatService.convertToDto(chat);
+    }
+
+    static TdApi.Chat newChat(long chatId, long order) {
+        TdApi.Chat chat = new TdApi.Chat();
+        chat.id = chatId;
+        chat.type = new TdApi.ChatTypePrivate(chatId);
+        chat.title = "Chat #" + chatId;
+        chat.positions = new TdApi.ChatPosition[]{mainPosition(order)};
+        return chat;
+    }
+
+    static TdApi.Message newMessage(long chatId) {
+        TdApi.Message message = new TdApi.Message();
+        message.chatId = chatId;
+        message.date = (int) (System.currentTimeMillis() / 1000);
+        message.content = new TdApi.MessageText(new TdApi.FormattedText("Hello", new TdApi.TextEntity[0]), null, null);
+        return message;
+    }
+
+    private static TdApi.ChatPosition mainPosition(long order) {
+        return new TdApi.ChatPosition(new TdApi.ChatListMain(), order, false, null);
+    }
+}
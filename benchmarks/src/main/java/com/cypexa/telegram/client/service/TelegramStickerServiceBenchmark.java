@@ -0,0 +1,95 @@
+package com.cypexa.telegram.client.service;
+
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
+import com.cypexa.telegram.client.dto.StickerSetResponseDto;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.observation.TelegramObservations;
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.drinkless.tdlib.TdApi;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Преобразование наборов стикеров TDLib в DTO ответов контроллера
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TelegramStickerServiceBenchmark {
+
+    @Param({"20", "120"})
+    int stickerCount;
+
+    TelegramStickerService stickerService;
+    TdApi.StickerSet stickerSet;
+    TdApi.StickerSets stickerSets;
+
+    @Setup
+    public void setUp() {
+        TelegramClientProperties properties = new TelegramClientProperties();
+        // Измеряем путь запроса вместе с ограничителем, как до его выключения по умолчанию
+        properties.getLimiter().setEnabled(true);
+        TelegramMetrics metrics = new TelegramMetrics(new SimpleMeterRegistry(), properties);
+        stickerService = new TelegramStickerService(null, new TelegramAuthService(null, properties, metrics),
+                new AdaptiveConcurrencyLimiter(properties.getLimiter()), new QueryCoalescer(true), metrics,
+                new TelegramObservations(ObservationRegistry.NOOP));
+
+        stickerSet = new TdApi.StickerSet();
+        stickerSet.id = 1;
+        stickerSet.name = "benchmark_set";
+        stickerSet.title = "Benchmark set";
+        stickerSet.stickers = new TdApi.Sticker[stickerCount];
+        for (int i = 0; i < stickerCount; i++) {
+            TdApi.Sticker sticker = new TdApi.Sticker();
+            sticker.id = i;
+            sticker.setId = stickerSet.id;
+            sticker.width = 512;
+            sticker.height = 512;
+            sticker.emoji = "🙂";
+            TdApi.LocalFile local = new TdApi.LocalFile();
+            local.path = "stickers/" + i + ".webp";
+            sticker.sticker = new TdApi.File(i, 16384, 16384, local, null);
+            sticker.thumbnail = new TdApi.Thumbnail(null, 128, 128, sticker.sticker);
+            stickerSet.stickers[i] = sticker;
+        }
+
+        TdApi.StickerSetInfo[] sets = new TdApi.StickerSetInfo[stickerCount];
+        for (int i = 0; i < stickerCount; i++) {
+            TdApi.StickerSetInfo set = new TdApi.StickerSetInfo();
+            set.id = i;
+            set.name = "set_" + i;
+            set.title = "Set #" + i;
+            set.size = stickerCount;
+            sets[i] = set;
+        }
+        stickerSets = new TdApi.StickerSets(sets.length, sets);
+    }
+
+    @Benchmark
+    public StickerSetResponseDto convertStickerSetToDto() {
+        return stickerService.convertStickerSetToDto(stickerSet);
+    }
+
+    @Benchmark
+    public List<StickerSetResponseDto> convertStickerSetsToDto() {
+        return stickerService.convertStickerSetsToDto(stickerSets);
+    }
+}
@@ -0,0 +1,74 @@
+package org.drinkless.tdlib;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import com.cypexa.telegram.client.transport.FakeTdlibTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Полный путь запроса через Client: таблица ожидающих запросов, колесо таймеров, поток приема и
+ * завершение QueryFuture. Вместо нативной TDLib используется FakeTdlibTransport без задержки,
+ * поэтому измеряются только накладные расходы Java-части клиента.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ClientDispatchBenchmark {
+
+    private static final int BATCH_SIZE = 100;
+
+    @State(Scope.Benchmark)
+    public static class FakeClient {
+        // Транспорт задается один раз на JVM, до создания первого клиента
+        private static Client client;
+
+        Client telegramClient;
+
+        @Setup
+        public void setUp() {
+            synchronized (FakeClient.class) {
+                if (client == null) {
+                    TelegramClientProperties.Fake settings = new TelegramClientProperties.Fake();
+                    settings.setMinLatency(Duration.ZERO);
+                    settings.setMaxLatency(Duration.ZERO);
+                    Client.setTransport(new FakeTdlibTransport(settings));
+                    Client.setDefaultQueryTimeout(30_000);
+                    client = Client.create(null, null, null);
+                }
+            }
+            telegramClient = client;
+        }
+    }
+
+    @Benchmark
+    public TdApi.Ok roundTrip(FakeClient state) {
+        return state.telegramClient.sendAsync(new TdApi.TestCallEmpty()).join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Object pipelined(FakeClient state) {
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            futures[i] = state.telegramClient.sendAsync(new TdApi.TestCallEmpty());
+        }
+        return CompletableFuture.allOf(futures).join();
+    }
+}
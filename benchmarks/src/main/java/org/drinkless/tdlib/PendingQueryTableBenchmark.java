@@ -0,0 +1,86 @@
+package org.drinkless.tdlib;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сравнивает таблицу ожидающих запросов Client до и после перехода на PendingQueryTable.
+ * Каждый поток добавляет обработчик нового запроса и удаляет обработчик запроса,
+ * отправленного window запросов назад, что соответствует window запросам в полете на поток.
+ * Запуск: {@code java -jar target/benchmarks.jar PendingQueryTable}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class PendingQueryTableBenchmark {
+
+    private static final Client.ResultHandler HANDLER = object -> {
+    };
+
+    /**
+     * Прежняя реализация: общий для всех клиентов счетчик и ConcurrentHashMap с упаковкой ключа
+     */
+    @State(Scope.Benchmark)
+    public static class BoxedMap {
+        final AtomicLong currentQueryId = new AtomicLong();
+        final ConcurrentHashMap<Long, Object[]> handlers = new ConcurrentHashMap<>();
+    }
+
+    @State(Scope.Benchmark)
+    public static class PrimitiveTable {
+        final AtomicLong currentQueryId = new AtomicLong();
+        final PendingQueryTable handlers = new PendingQueryTable();
+    }
+
+    @State(Scope.Thread)
+    public static class InFlight {
+        @Param({"16", "1024"})
+        int window;
+
+        long[] queryIds;
+        int position;
+
+        @Setup
+        public void setUp() {
+            queryIds = new long[window];
+        }
+    }
+
+    @Benchmark
+    public Object boxedMap(BoxedMap map, InFlight inFlight) {
+        long queryId = map.currentQueryId.incrementAndGet();
+        // Object[] моделирует обертку Handler(resultHandler, exceptionHandler)
+        map.handlers.put(queryId, new Object[]{HANDLER, null});
+        long oldQueryId = inFlight.queryIds[inFlight.position];
+        inFlight.queryIds[inFlight.position] = queryId;
+        inFlight.position = (inFlight.position + 1) % inFlight.window;
+        return oldQueryId == 0 ? null : map.handlers.remove(oldQueryId);
+    }
+
+    @Benchmark
+    public Object primitiveTable(PrimitiveTable table, InFlight inFlight) {
+        long queryId = table.currentQueryId.incrementAndGet();
+        table.handlers.put(queryId, HANDLER);
+        long oldQueryId = inFlight.queryIds[inFlight.position];
+        inFlight.queryIds[inFlight.position] = queryId;
+        inFlight.position = (inFlight.position + 1) % inFlight.window;
+        return oldQueryId == 0 ? null : table.handlers.remove(oldQueryId);
+    }
+}
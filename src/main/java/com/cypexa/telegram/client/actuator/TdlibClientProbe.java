@@ -0,0 +1,64 @@
+package com.cypexa.telegram.client.actuator;
+
+import com.cypexa.telegram.client.service.TelegramAuthService;
+import com.cypexa.telegram.client.service.TelegramChatService;
+import lombok.RequiredArgsConstructor;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Сведения о состоянии клиента TDLib для actuator: очередь запросов, поток приема, авторизация, кэш чатов
+ * и время ответа TDLib на пустой запрос
+ */
+@Component
+@RequiredArgsConstructor
+public class TdlibClientProbe {
+
+    private final Client telegramClient;
+    private final TelegramAuthService authService;
+    private final TelegramChatService chatService;
+
+    /**
+     * Время ответа TDLib на TestCallEmpty. Запрос отправляется напрямую, минуя ограничение
+     * одновременных запросов, чтобы проверка не ждала в общей очереди
+     */
+    public Mono<Duration> ping(Duration timeout) {
+        return Mono.defer(() -> {
+            long startNanos = System.nanoTime();
+            return Mono.fromFuture(() -> telegramClient.sendAsync(new TdApi.TestCallEmpty(), timeout.toMillis()), false)
+                    .map(ok -> Duration.ofNanos(System.nanoTime() - startNanos));
+        });
+    }
+
+    public long getPendingQueries() {
+        return Client.getPendingQueryCount();
+    }
+
+    public Duration getOldestPendingQueryAge() {
+        return Duration.ofNanos(Client.getOldestPendingQueryAgeNanos());
+    }
+
+    /**
+     * Сведения о клиенте без обращения к TDLib
+     */
+    public Map<String, Object> getDetails() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("pendingQueries", getPendingQueries());
+        details.put("oldestPendingQueryAge", getOldestPendingQueryAge());
+        details.put("receiverLag", Duration.ofNanos(Client.getReceiverLagNanos()));
+        details.put("receiverBatchFill", Client.getLastReceivedBatchFill());
+        details.put("authorizationState", authService.getCurrentAuthState());
+        details.put("chats", chatService.getChatCount());
+        details.put("mainChatList", chatService.getMainChatListSize());
+        details.put("haveFullMainChatList", chatService.isFullMainChatListLoaded());
+        details.put("chatLists", chatService.getChatListSizes());
+        details.put("chatStore", chatService.getChatStoreFootprint());
+        return details;
+    }
+}
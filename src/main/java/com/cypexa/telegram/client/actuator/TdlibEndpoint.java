@@ -0,0 +1,38 @@
+package com.cypexa.telegram.client.actuator;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code GET /actuator/tdlib} с текущим состоянием клиента TDLib:
+ * число и возраст ожидающих ответа запросов, задержка потока приема, состояние авторизации,
+ * размеры кэша чатов и измеренное время ответа TDLib (ping)
+ */
+@Component
+@Endpoint(id = "tdlib")
+@RequiredArgsConstructor
+public class TdlibEndpoint {
+
+    private final TdlibClientProbe probe;
+    private final TelegramClientProperties properties;
+
+    @ReadOperation
+    public Mono<Map<String, Object>> tdlib() {
+        Map<String, Object> details = probe.getDetails();
+        return probe.ping(properties.getHealth().getPingTimeout())
+                .map(latency -> {
+                    details.put("ping", latency);
+                    return details;
+                })
+                .onErrorResume(error -> {
+                    details.put("pingError", error.getMessage());
+                    return Mono.just(details);
+                });
+    }
+}
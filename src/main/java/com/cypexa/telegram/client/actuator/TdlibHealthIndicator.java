@@ -0,0 +1,51 @@
+package com.cypexa.telegram.client.actuator;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.AbstractReactiveHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Состояние клиента TDLib для балансировщика нагрузки:
+ * <ul>
+ *     <li>DOWN - TDLib не ответил на TestCallEmpty за ping-timeout;</li>
+ *     <li>DEGRADED - время ответа больше degraded-ping-latency или ответа ждут больше degraded-pending-queries запросов;</li>
+ *     <li>UP - в остальных случаях.</li>
+ * </ul>
+ * Статус DEGRADED отображается в HTTP 503 (management.endpoint.health.status.http-mapping.degraded)
+ */
+@Component("tdlib")
+@RequiredArgsConstructor
+public class TdlibHealthIndicator extends AbstractReactiveHealthIndicator {
+
+    public static final Status DEGRADED = new Status("DEGRADED", "TDLib responds slowly or has a backlog of queries");
+
+    private final TdlibClientProbe probe;
+    private final TelegramClientProperties properties;
+
+    @Override
+    protected Mono<Health> doHealthCheck(Health.Builder builder) {
+        TelegramClientProperties.Health health = properties.getHealth();
+        long pendingQueries = probe.getPendingQueries();
+        builder.withDetail("pendingQueries", pendingQueries)
+                .withDetail("oldestPendingQueryAge", probe.getOldestPendingQueryAge());
+        return probe.ping(health.getPingTimeout())
+                .map(latency -> {
+                    builder.withDetail("ping", latency);
+                    if (isDegraded(latency, pendingQueries, health)) {
+                        return builder.status(DEGRADED).build();
+                    }
+                    return builder.up().build();
+                });
+    }
+
+    private boolean isDegraded(Duration latency, long pendingQueries, TelegramClientProperties.Health health) {
+        return latency.compareTo(health.getDegradedPingLatency()) > 0
+                || pendingQueries > health.getDegradedPendingQueries();
+    }
+}
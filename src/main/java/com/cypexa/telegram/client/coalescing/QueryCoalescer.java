@@ -0,0 +1,58 @@
+package com.cypexa.telegram.client.coalescing;
+
+import org.drinkless.tdlib.TdApi;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Объединяет одновременные одинаковые запросы на чтение к TDLib (single-flight):
+ * пока запрос выполняется, повторные запросы с тем же {@link QueryKey} не отправляются,
+ * а подписываются на результат уже отправленного. Запрос отменяется, только когда
+ * от него отписались все ожидающие
+ */
+public class QueryCoalescer {
+
+    private final boolean enabled;
+    private final ConcurrentMap<QueryKey, SharedQuery<?>> inFlight = new ConcurrentHashMap<>();
+
+    public QueryCoalescer(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Выполняет запрос или присоединяется к уже выполняющемуся такому же запросу
+     *
+     * @param function запрос, по которому определяется ключ
+     * @param call     фабрика Mono, отправляющего запрос при подписке
+     */
+    @SuppressWarnings("unchecked")
+    public <R extends TdApi.Object> Mono<R> execute(TdApi.Function<R> function, Supplier<Mono<R>> call) {
+        QueryKey key = enabled ? QueryKey.of(function) : null;
+        if (key == null) {
+            return Mono.defer(call);
+        }
+        return Mono.defer(() -> ((SharedQuery<R>) inFlight.computeIfAbsent(key, k -> new SharedQuery<>(k, call)))
+                .result);
+    }
+
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    private final class SharedQuery<R> {
+        final Mono<R> result;
+
+        SharedQuery(QueryKey key, Supplier<Mono<R>> call) {
+            // refCount: запрос отправляется при первой подписке и отменяется, когда отписались все
+            this.result = call.get()
+                    .doFinally(signal -> inFlight.remove(key, this))
+                    .flux()
+                    .publish()
+                    .refCount()
+                    .singleOrEmpty();
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.cypexa.telegram.client.coalescing;
+
+import org.drinkless.tdlib.TdApi;
+
+/**
+ * Ключ идемпотентного запроса к TDLib: тип запроса и его аргументы.
+ * Объекты TdApi не реализуют equals, поэтому ключ строится только для известных
+ * запросов на чтение, результат которых не зависит от того, кто его запросил
+ */
+public record QueryKey(int constructor, long firstArgument, long secondArgument) {
+
+    /**
+     * @return ключ запроса или null, если одинаковые запросы этого типа нельзя объединять
+     */
+    public static QueryKey of(TdApi.Function<?> function) {
+        return switch (function.getConstructor()) {
+            case TdApi.GetChat.CONSTRUCTOR -> new QueryKey(TdApi.GetChat.CONSTRUCTOR,
+                    ((TdApi.GetChat) function).chatId, 0);
+            case TdApi.GetMessage.CONSTRUCTOR -> new QueryKey(TdApi.GetMessage.CONSTRUCTOR,
+                    ((TdApi.GetMessage) function).chatId, ((TdApi.GetMessage) function).messageId);
+            case TdApi.GetUser.CONSTRUCTOR -> new QueryKey(TdApi.GetUser.CONSTRUCTOR,
+                    ((TdApi.GetUser) function).userId, 0);
+            case TdApi.GetUserFullInfo.CONSTRUCTOR -> new QueryKey(TdApi.GetUserFullInfo.CONSTRUCTOR,
+                    ((TdApi.GetUserFullInfo) function).userId, 0);
+            case TdApi.GetBasicGroup.CONSTRUCTOR -> new QueryKey(TdApi.GetBasicGroup.CONSTRUCTOR,
+                    ((TdApi.GetBasicGroup) function).basicGroupId, 0);
+            case TdApi.GetSupergroup.CONSTRUCTOR -> new QueryKey(TdApi.GetSupergroup.CONSTRUCTOR,
+                    ((TdApi.GetSupergroup) function).supergroupId, 0);
+            case TdApi.GetSupergroupFullInfo.CONSTRUCTOR -> new QueryKey(TdApi.GetSupergroupFullInfo.CONSTRUCTOR,
+                    ((TdApi.GetSupergroupFullInfo) function).supergroupId, 0);
+            case TdApi.GetStickerSet.CONSTRUCTOR -> new QueryKey(TdApi.GetStickerSet.CONSTRUCTOR,
+                    ((TdApi.GetStickerSet) function).setId, 0);
+            case TdApi.GetInstalledStickerSets.CONSTRUCTOR -> {
+                TdApi.StickerType stickerType = ((TdApi.GetInstalledStickerSets) function).stickerType;
+                yield new QueryKey(TdApi.GetInstalledStickerSets.CONSTRUCTOR,
+                        stickerType == null ? 0 : stickerType.getConstructor(), 0);
+            }
+            default -> null;
+        };
+    }
+}
@@ -1,30 +1,59 @@
 package com.cypexa.telegram.client.config;
 
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
+import com.cypexa.telegram.client.dispatch.PartitionedExecutorDispatcher;
 import com.cypexa.telegram.client.handlers.message.LogMessageHandler;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
 import com.cypexa.telegram.client.properties.TelegramClientProperties;
 import com.cypexa.telegram.client.service.TelegramUpdateHandler;
+import com.cypexa.telegram.client.trace.UpdateTraceWriter;
+import com.cypexa.telegram.client.transport.FakeTdlibTransport;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.ShardedDispatcher;
 import org.drinkless.tdlib.TdApi;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.context.annotation.Lazy;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
 import java.io.IOError;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 @RequiredArgsConstructor
 @Slf4j
 public class TelegramClientConfiguration {
 
+    // Сколько ждать обработки поставленных в очереди событий при остановке диспетчера
+    private static final Duration DISPATCHER_CLOSE_TIMEOUT = Duration.ofSeconds(10);
+
     private final TelegramClientProperties properties;
 
+    // Потоки диспетчера событий; освобождаются при остановке контекста
+    private AutoCloseable dispatcherResources;
+
     @Bean
-    public Client telegramClient(@Lazy TelegramUpdateHandler updateHandler) {
+    public Client telegramClient(TelegramUpdateHandler updateHandler,
+                                 ObjectProvider<UpdateTraceWriter> updateTraceWriter) {
         log.info("Initializing Telegram client");
 
+        // Имитация TDLib для нагрузочного тестирования вместо нативной библиотеки
+        if (properties.getFake().getEnabled()) {
+            log.warn("Using fake TDLib transport, no requests are sent to Telegram");
+            Client.setTransport(new FakeTdlibTransport(properties.getFake()));
+        }
+
         // Настройка логирования
         Client.setLogMessageHandler(properties.getLogVerbosityLevel(), new LogMessageHandler());
 
@@ -35,7 +64,112 @@ public class TelegramClientConfiguration {
             throw new IOError(new IOException("Write access to the current directory is required"));
         }
 
+        // Обработка событий вне потока приема с сохранением порядка внутри чата
+        Client.setDispatcher(createDispatcher(properties.getDispatcher()));
+
+        configureQueryTimeouts(properties.getTimeouts());
+
         // Создаем клиент с переданным обработчиком обновлений
-        return Client.create(updateHandler::handleUpdate, null, null);
+        Client.ResultHandler handler = updateHandler::handleUpdate;
+        UpdateTraceWriter traceWriter = updateTraceWriter.getIfAvailable();
+        if (traceWriter != null) {
+            log.info("Recording TDLib updates to {}", properties.getTrace().getFile());
+            handler = update -> {
+                traceWriter.record(update);
+                updateHandler.handleUpdate(update);
+            };
+        }
+        return Client.create(handler, null, null);
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.telegram.client.trace", name = "file")
+    public UpdateTraceWriter updateTraceWriter() throws IOException {
+        return new UpdateTraceWriter(Path.of(properties.getTrace().getFile()));
+    }
+
+    @Bean
+    public AdaptiveConcurrencyLimiter telegramRequestLimiter() {
+        return new AdaptiveConcurrencyLimiter(properties.getLimiter());
+    }
+
+    @Bean
+    public QueryCoalescer telegramQueryCoalescer() {
+        return new QueryCoalescer(properties.getCoalescing().getEnabled());
+    }
+
+    /**
+     * Возвращает обработку событий в поток приема и останавливает потоки диспетчера,
+     * иначе при каждом перезапуске контекста они остаются работать
+     */
+    @PreDestroy
+    public void closeDispatcher() throws Exception {
+        if (dispatcherResources != null) {
+            log.info("Stopping TDLib dispatcher");
+            Client.setDispatcher(null);
+            dispatcherResources.close();
+            dispatcherResources = null;
+        }
+    }
+
+    private Client.Dispatcher createDispatcher(TelegramClientProperties.Dispatcher dispatcher) {
+        log.info("Using {} TDLib dispatch mode", dispatcher.getMode());
+        return switch (dispatcher.getMode()) {
+            case RECEIVER -> null;
+            case SHARDED -> {
+                ShardedDispatcher sharded = new ShardedDispatcher(dispatcher.getThreads(),
+                        dispatcher.getQueueCapacity());
+                dispatcherResources = sharded;
+                yield sharded;
+            }
+            case VIRTUAL -> {
+                ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                        Thread.ofVirtual().name("tdlib-dispatch-", 0).factory());
+                PartitionedExecutorDispatcher partitioned = new PartitionedExecutorDispatcher(executor,
+                        dispatcher.getPartitions(), dispatcher.getQueueCapacity());
+                dispatcherResources = () -> {
+                    partitioned.close();
+                    executor.shutdown();
+                    // Ждем обработки уже поставленных в очереди событий
+                    if (!executor.awaitTermination(DISPATCHER_CLOSE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                        log.warn("TDLib dispatcher didn't stop in {}", DISPATCHER_CLOSE_TIMEOUT);
+                    }
+                };
+                yield partitioned;
+            }
+            case SCHEDULER -> {
+                Scheduler scheduler = Schedulers.newBoundedElastic(dispatcher.getThreads(),
+                        dispatcher.getQueueCapacity(), "tdlib-dispatch", 60, true);
+                PartitionedExecutorDispatcher partitioned = new PartitionedExecutorDispatcher(scheduler::schedule,
+                        dispatcher.getPartitions(), dispatcher.getQueueCapacity());
+                dispatcherResources = () -> {
+                    partitioned.close();
+                    scheduler.disposeGracefully()
+                            .timeout(DISPATCHER_CLOSE_TIMEOUT)
+                            .onErrorResume(error -> {
+                                log.warn("TDLib dispatcher didn't stop in {}", DISPATCHER_CLOSE_TIMEOUT);
+                                return Mono.fromRunnable(scheduler::dispose);
+                            })
+                            .block();
+                };
+                yield partitioned;
+            }
+        };
+    }
+
+    private void configureQueryTimeouts(TelegramClientProperties.Timeouts timeouts) {
+        Client.setDefaultQueryTimeout(timeouts.getDefaultTimeout().toMillis());
+        timeouts.getFunctions().forEach((functionName, timeout) -> {
+            try {
+                Class<?> functionClass = Class.forName(TdApi.class.getName() + "$" + functionName);
+                if (!TdApi.Function.class.isAssignableFrom(functionClass)) {
+                    throw new IllegalArgumentException("Not a TDLib function: " + functionName);
+                }
+                int constructor = functionClass.getField("CONSTRUCTOR").getInt(null);
+                Client.setQueryTimeout(constructor, timeout.toMillis());
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Unknown TDLib function: " + functionName, e);
+            }
+        });
     }
 } 
\ No newline at end of file
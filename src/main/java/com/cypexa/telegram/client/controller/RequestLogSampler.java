@@ -0,0 +1,36 @@
+package com.cypexa.telegram.client.controller;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import org.slf4j.Logger;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.slf4j.spi.NOPLoggingEventBuilder;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Выборочное логирование входящих запросов контроллеров. В лог попадает доля запросов
+ * spring.telegram.client.request-logging.sample-rate; сообщение содержит пары ключ-значение
+ * (operation и параметры запроса), которые выводятся структурированным логированием Spring Boot
+ * (logging.structured.format.console). Для невыбранных запросов сообщение не формируется
+ */
+@Component
+public class RequestLogSampler {
+
+    private final double sampleRate;
+
+    public RequestLogSampler(TelegramClientProperties properties) {
+        this.sampleRate = properties.getRequestLogging().getSampleRate();
+    }
+
+    /**
+     * Построитель сообщения уровня INFO для выбранного запроса или пустой построитель
+     */
+    public LoggingEventBuilder atInfo(Logger log, String operation) {
+        if (sampleRate <= 0 || !log.isInfoEnabled()
+                || (sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate)) {
+            return NOPLoggingEventBuilder.singleton();
+        }
+        return log.atInfo().addKeyValue("operation", operation);
+    }
+}
@@ -23,20 +23,33 @@ import reactor.core.publisher.Mono;
 @Slf4j
 public class TelegramChatController {
 
+    // Максимальный размер страницы списка чатов
+    private static final int MAX_CHATS_LIMIT = 1000;
+
     private final TelegramChatService chatService;
+    private final RequestLogSampler requestLog;
 
     @GetMapping
     public Mono<ResponseEntity<ChatListResponseDto>> getChats(
-            @RequestParam(defaultValue = "100") int limit) {
-        log.info("Received request to get chats with limit: {}", limit);
+            @RequestParam(defaultValue = "main") String list,
+            @RequestParam(defaultValue = "100") int limit,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "false") boolean partial) {
+        requestLog.atInfo(log, "getChats").addKeyValue("list", list).addKeyValue("limit", limit)
+                .addKeyValue("cursor", cursor)
+                .log("Received request to get chats from {} list with limit: {}", list, limit);
+        if (limit < 1 || limit > MAX_CHATS_LIMIT) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_CHATS_LIMIT);
+        }
         
-        return chatService.getChats(limit)
+        return chatService.getChats(list, limit, cursor, partial)
                 .map(ResponseEntity::ok);
     }
 
     @GetMapping("/{chatId}")
     public Mono<ResponseEntity<ChatResponseDto>> getChatById(@PathVariable long chatId) {
-        log.info("Received request to get chat by ID: {}", chatId);
+        requestLog.atInfo(log, "getChatById").addKeyValue("chatId", chatId)
+                .log("Received request to get chat by ID: {}", chatId);
         
         return chatService.getChatById(chatId)
                 .map(ResponseEntity::ok);
@@ -46,7 +59,8 @@ public class TelegramChatController {
     public Mono<ResponseEntity<MessageResponseDto>> sendMessageToChat(
             @PathVariable long chatId,
             @RequestBody SendMessageRequestDto request) {
-        log.info("Received request to send message to chat: {}", chatId);
+        requestLog.atInfo(log, "sendMessage").addKeyValue("chatId", chatId)
+                .log("Received request to send message to chat: {}", chatId);
         
         // Устанавливаем chatId из path parameter
         request.setChatId(chatId);
@@ -24,10 +24,12 @@ import java.util.List;
 public class TelegramStickerController {
 
     private final TelegramStickerService stickerService;
+    private final RequestLogSampler requestLog;
 
     @GetMapping("/sets")
     public Mono<ResponseEntity<List<StickerSetResponseDto>>> getInstalledStickerSets() {
-        log.info("Received request to get installed sticker sets");
+        requestLog.atInfo(log, "getInstalledStickerSets")
+                .log("Received request to get installed sticker sets");
         
         return stickerService.getInstalledStickerSets()
                 .map(ResponseEntity::ok);
@@ -36,7 +38,8 @@ public class TelegramStickerController {
     @GetMapping("/sets/{stickerSetName}")
     public Mono<ResponseEntity<StickerSetResponseDto>> getStickerSet(
             @PathVariable String stickerSetName) {
-        log.info("Received request to get sticker set: {}", stickerSetName);
+        requestLog.atInfo(log, "getStickerSet").addKeyValue("stickerSetName", stickerSetName)
+                .log("Received request to get sticker set: {}", stickerSetName);
         
         return stickerService.getStickerSet(stickerSetName)
                 .map(ResponseEntity::ok);
@@ -45,7 +48,8 @@ public class TelegramStickerController {
     @PostMapping("/send")
     public Mono<ResponseEntity<MessageResponseDto>> sendStickerToChat(
             @RequestBody SendStickerRequestDto request) {
-        log.info("Received request to send sticker to chat: {}", request.getChatId());
+        requestLog.atInfo(log, "sendSticker").addKeyValue("chatId", request.getChatId())
+                .log("Received request to send sticker to chat: {}", request.getChatId());
         
         // Устанавливаем chatId из path parameter
         request.setChatId(request.getChatId());
@@ -0,0 +1,208 @@
+package com.cypexa.telegram.client.dispatch;
+
+import org.drinkless.tdlib.Client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Диспетчер событий TDLib поверх произвольного Executor (виртуальные потоки, Reactor Scheduler).
+ * События распределяются по партициям по ключу; каждая партиция выполняется последовательно,
+ * поэтому порядок событий одного чата сохраняется, а разные партиции обрабатываются параллельно.
+ * Поток приема TDLib блокируется, когда в очередях накопилось queueCapacity необработанных событий.
+ * Исполнитель принадлежит вызывающему коду и останавливается им после close()
+ */
+public class PartitionedExecutorDispatcher implements Client.Dispatcher, AutoCloseable {
+
+    // Сколько событий партиция обрабатывает подряд, прежде чем уступить исполнитель другим
+    private static final int BATCH_SIZE = 64;
+
+    private final Executor executor;
+    private final Partition[] partitions;
+    private final Semaphore capacity;
+    private final int queueCapacity;
+    private volatile boolean closed = false;
+
+    public PartitionedExecutorDispatcher(Executor executor, int partitionCount, int queueCapacity) {
+        this.executor = executor;
+        this.partitions = new Partition[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            partitions[i] = new Partition();
+        }
+        this.queueCapacity = queueCapacity;
+        this.capacity = new Semaphore(queueCapacity);
+    }
+
+    @Override
+    public void dispatch(long partitionKey, Runnable task) {
+        if (closed) {
+            task.run();
+            return;
+        }
+        capacity.acquireUninterruptibly();
+        long hash = partitionKey * 0x9E3779B97F4A7C15L;
+        partitions[(int) ((hash >>> 33) % partitions.length)].add(task);
+    }
+
+    /**
+     * Выполняет задачу после обработки всех событий, переданных до вызова, во всех партициях.
+     * Не занимает места в очередях и не блокируется; задачу выполняет партиция, закончившая последней
+     */
+    @Override
+    public void dispatchBarrier(Runnable task) {
+        Barrier barrier = new Barrier(task, partitions.length);
+        for (Partition partition : partitions) {
+            partition.await(barrier);
+        }
+    }
+
+    public int getQueueSize() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    /**
+     * Перестает принимать события в очереди: события, переданные после вызова, обрабатываются
+     * в вызывающем потоке. Уже поставленные в очереди события дообрабатываются, пока исполнитель работает;
+     * ожидающие барьеры выполняются сразу
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Partition partition : partitions) {
+            partition.releaseAllBarriers();
+        }
+    }
+
+    private static void arrive(BarrierWaiter waiter) {
+        try {
+            waiter.barrier.arrive();
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private static final class Barrier {
+        private final Runnable task;
+        private final AtomicInteger remaining;
+
+        Barrier(Runnable task, int count) {
+            this.task = task;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        void arrive() {
+            if (remaining.decrementAndGet() == 0) {
+                task.run();
+            }
+        }
+    }
+
+    // Барьер ждет, пока партиция обработает processedCount событий; сравнивается по ссылке
+    private static final class BarrierWaiter {
+        final Barrier barrier;
+        final long processedCount;
+
+        BarrierWaiter(Barrier barrier, long processedCount) {
+            this.barrier = barrier;
+            this.processedCount = processedCount;
+        }
+    }
+
+    private final class Partition implements Runnable {
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicLong dispatchedCount = new AtomicLong();
+        // Изменяется только выполняющей партицию задачей
+        private volatile long processedCount;
+        private final Queue<BarrierWaiter> barrierWaiters = new ConcurrentLinkedQueue<>();
+
+        void add(Runnable task) {
+            tasks.add(task);
+            dispatchedCount.incrementAndGet();
+            if (scheduled.compareAndSet(false, true)) {
+                schedule();
+            }
+        }
+
+        void await(Barrier barrier) {
+            BarrierWaiter waiter = new BarrierWaiter(barrier, dispatchedCount.get());
+            if (isReleased(waiter)) {
+                barrier.arrive();
+                return;
+            }
+            barrierWaiters.add(waiter);
+            // Партиция могла обработать события или диспетчер мог закрыться до добавления барьера
+            if (isReleased(waiter) && barrierWaiters.remove(waiter)) {
+                barrier.arrive();
+            }
+        }
+
+        private boolean isReleased(BarrierWaiter waiter) {
+            return processedCount >= waiter.processedCount || closed;
+        }
+
+        @Override
+        public void run() {
+            if (runBatch()) {
+                schedule();
+            }
+        }
+
+        // Обрабатывает до BATCH_SIZE событий; true - в партиции остались события и она должна быть запланирована снова
+        private boolean runBatch() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                Runnable task = tasks.poll();
+                if (task == null) {
+                    scheduled.set(false);
+                    // Событие могло добавиться после poll, но до сброса флага
+                    if (tasks.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                        return false;
+                    }
+                    continue;
+                }
+                try {
+                    task.run();
+                } catch (Throwable ignored) {
+                } finally {
+                    capacity.release();
+                }
+                processedCount++;
+                if (!barrierWaiters.isEmpty()) {
+                    releaseBarriers();
+                }
+            }
+            return true;
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException e) {
+                // Исполнитель остановлен: дообрабатываем партицию в вызывающем потоке, без рекурсии
+                while (runBatch()) {
+                }
+            }
+        }
+
+        private void releaseBarriers() {
+            long processed = processedCount;
+            for (BarrierWaiter waiter : barrierWaiters) {
+                if (waiter.processedCount <= processed && barrierWaiters.remove(waiter)) {
+                    arrive(waiter);
+                }
+            }
+        }
+
+        void releaseAllBarriers() {
+            BarrierWaiter waiter;
+            while ((waiter = barrierWaiters.poll()) != null) {
+                arrive(waiter);
+            }
+        }
+    }
+}
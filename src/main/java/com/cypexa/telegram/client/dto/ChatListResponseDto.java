@@ -7,6 +7,8 @@ import java.util.List;
 public class ChatListResponseDto {
     private List<ChatResponseDto> chats;
     private int totalCount;
+    // Курсор следующей страницы (параметр cursor); null - страница последняя
+    private String nextCursor;
     private boolean success;
     private String error;
     
@@ -17,6 +19,12 @@ public class ChatListResponseDto {
         response.setSuccess(true);
         return response;
     }
+
+    public static ChatListResponseDto success(List<ChatResponseDto> chats, int totalCount, String nextCursor) {
+        ChatListResponseDto response = success(chats, totalCount);
+        response.setNextCursor(nextCursor);
+        return response;
+    }
     
     public static ChatListResponseDto error(String error) {
         ChatListResponseDto response = new ChatListResponseDto();
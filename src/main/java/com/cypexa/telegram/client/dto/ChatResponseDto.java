@@ -15,6 +15,8 @@ public class ChatResponseDto {
     private String photoUrl;
     private long lastMessageDate;
     private String lastMessageText;
+    private int unreadCount;
+    private int unreadMentionCount;
     
     public static ChatResponseDto success(long id, String title, String type) {
         ChatResponseDto response = new ChatResponseDto();
@@ -1,6 +1,8 @@
 package com.cypexa.telegram.client.exception;
 
+import com.cypexa.telegram.client.limiter.RequestRejectedException;
 import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.Client;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -26,6 +28,36 @@ public class TelegramControllerAdvice {
         return Mono.just(ResponseEntity.badRequest().body(errorResponse));
     }
 
+    @ExceptionHandler(Client.TdlibException.class)
+    public Mono<ResponseEntity<Map<String, Object>>> handleTdlibException(Client.TdlibException ex) {
+        // Ошибка TDLib - ожидаемый ответ (чат не найден, нет прав и т.п.), стек вызовов не нужен
+        log.warn("TDLib error: {}", ex.getMessage());
+
+        Map<String, Object> errorResponse = Map.of(
+                "success", false,
+                "error", ex.getMessage(),
+                "timestamp", System.currentTimeMillis()
+        );
+
+        // TDLib не ответил за отведенное запросу время - ошибка шлюза, а не запроса клиента
+        HttpStatus status = ex.error.code == Client.TIMEOUT_ERROR_CODE ? HttpStatus.GATEWAY_TIMEOUT
+                : HttpStatus.BAD_REQUEST;
+        return Mono.just(ResponseEntity.status(status).body(errorResponse));
+    }
+
+    @ExceptionHandler(RequestRejectedException.class)
+    public Mono<ResponseEntity<Map<String, Object>>> handleRequestRejectedException(RequestRejectedException ex) {
+        log.warn("Request rejected: {}", ex.getMessage());
+
+        Map<String, Object> errorResponse = Map.of(
+                "success", false,
+                "error", ex.getMessage(),
+                "timestamp", System.currentTimeMillis()
+        );
+
+        return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).body(errorResponse));
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public Mono<ResponseEntity<Map<String, Object>>> handleIllegalArgumentException(IllegalArgumentException ex) {
         log.warn("Invalid argument: {}", ex.getMessage());
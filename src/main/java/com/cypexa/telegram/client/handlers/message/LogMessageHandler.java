@@ -1,5 +1,6 @@
 package com.cypexa.telegram.client.handlers.message;
 
+import com.cypexa.telegram.client.jfr.TdlibFatalErrorEvent;
 import org.drinkless.tdlib.Client;
 
 import java.util.concurrent.atomic.AtomicLong;
@@ -8,6 +9,11 @@ public class LogMessageHandler implements Client.LogMessageHandler {
     @Override
     public void onLogMessage(int verbosityLevel, String message) {
         if (verbosityLevel == 0) {
+            TdlibFatalErrorEvent event = new TdlibFatalErrorEvent();
+            if (event.isEnabled()) {
+                event.message = message;
+                event.commit();
+            }
             onFatalError(message);
             return;
         }
@@ -0,0 +1,25 @@
+package com.cypexa.telegram.client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR изменения позиций чата в индексах списков чатов. Изменения выполняются под блокировкой чата;
+ * ожидание ее захвата записывается самой JVM в событии jdk.JavaMonitorEnter
+ */
+@Name("com.cypexa.telegram.ChatListUpdate")
+@Label("Chat List Update")
+@Description("Update of chat positions in the chat list indexes")
+@Category({"TDLib"})
+@StackTrace(false)
+public class ChatListUpdateEvent extends jdk.jfr.Event {
+
+    @Label("Chat Id")
+    public long chatId;
+
+    @Label("Main Chat List Size")
+    public int chatListSize;
+}
@@ -0,0 +1,19 @@
+package com.cypexa.telegram.client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Событие JFR фатальной ошибки TDLib, переданной в обработчик сообщений лога
+ */
+@Name("com.cypexa.telegram.TdlibFatalError")
+@Label("TDLib Fatal Error")
+@Description("Fatal error reported by TDLib through the log message callback")
+@Category({"TDLib"})
+public class TdlibFatalErrorEvent extends jdk.jfr.Event {
+
+    @Label("Message")
+    public String message;
+}
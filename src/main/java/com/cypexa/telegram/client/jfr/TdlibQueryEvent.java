@@ -0,0 +1,77 @@
+package com.cypexa.telegram.client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Событие JFR запроса к TDLib: длительность от отправки до результата, тип запроса, id и исход
+ */
+@Name("com.cypexa.telegram.TdlibQuery")
+@Label("TDLib Query")
+@Description("Query sent to TDLib, from send to result")
+@Category({"TDLib"})
+@StackTrace(false)
+public class TdlibQueryEvent extends jdk.jfr.Event {
+
+    private static final EventType TYPE = EventType.getEventType(TdlibQueryEvent.class);
+
+    @Label("Function")
+    String function;
+
+    @Label("Query Id")
+    long queryId;
+
+    @Label("Outcome")
+    @Description("ok, timeout, cancelled, TDLib error code or exception")
+    String outcome;
+
+    /**
+     * Если событие включено в записи JFR, записывает выполнение запроса queryId - от подписки на query
+     * до результата, ошибки или отмены. Без активной записи возвращает query без изменений
+     */
+    public static <R extends TdApi.Object> Mono<R> record(TdApi.Function<R> function, long queryId, Mono<R> query) {
+        if (!TYPE.isEnabled()) {
+            return query;
+        }
+        return Mono.defer(() -> {
+            TdlibQueryEvent event = new TdlibQueryEvent();
+            event.function = function.getClass().getSimpleName();
+            event.queryId = queryId;
+            event.begin();
+            return query
+                    .doOnSuccess(result -> event.finish(null))
+                    .doOnError(event::finish)
+                    .doOnCancel(() -> event.finish(new CancellationException()));
+        });
+    }
+
+    private void finish(Throwable error) {
+        end();
+        if (shouldCommit()) {
+            outcome = outcome(error);
+            commit();
+        }
+    }
+
+    private static String outcome(Throwable error) {
+        if (error == null) {
+            return "ok";
+        }
+        if (error instanceof CancellationException) {
+            return "cancelled";
+        }
+        if (error instanceof Client.TdlibException tdlibError) {
+            return tdlibError.error.code == Client.TIMEOUT_ERROR_CODE ? "timeout" : String.valueOf(tdlibError.error.code);
+        }
+        return "exception";
+    }
+}
@@ -0,0 +1,27 @@
+package com.cypexa.telegram.client.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Событие JFR обработки обновления TDLib обработчиком обновлений
+ */
+@Name("com.cypexa.telegram.TdlibUpdate")
+@Label("TDLib Update")
+@Description("Dispatch of a TDLib update to the update handler")
+@Category({"TDLib"})
+@StackTrace(false)
+public class TdlibUpdateEvent extends jdk.jfr.Event {
+
+    @Label("Type")
+    public String type;
+
+    @Label("Constructor")
+    public int constructor;
+
+    @Label("Chat Id")
+    public long chatId;
+}
@@ -0,0 +1,147 @@
+package com.cypexa.telegram.client.jfr;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint записи Java Flight Recorder с событиями TDLib:
+ * <ul>
+ *     <li>{@code POST /actuator/tdlibrecording} - начать запись (параметры settings - default или profile, maxAge);</li>
+ *     <li>{@code GET /actuator/tdlibrecording} - выгрузить записанное в файл .jfr, запись продолжается;</li>
+ *     <li>{@code DELETE /actuator/tdlibrecording} - остановить запись.</li>
+ * </ul>
+ */
+@Component
+@Endpoint(id = "tdlibrecording")
+@Slf4j
+public class TelegramRecordingEndpoint {
+
+    private static final String DEFAULT_SETTINGS = "default";
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofMinutes(10);
+    private static final List<Class<? extends jdk.jfr.Event>> EVENTS = List.of(
+            TdlibQueryEvent.class, TdlibUpdateEvent.class, ChatListUpdateEvent.class, TdlibFatalErrorEvent.class);
+
+    private Recording recording;
+
+    @WriteOperation
+    public synchronized Map<String, Object> start(@Nullable String settings, @Nullable Duration maxAge)
+            throws IOException, ParseException {
+        if (recording != null && recording.getState() == RecordingState.RUNNING) {
+            return status();
+        }
+        Recording newRecording = new Recording(Configuration.getConfiguration(settings == null ? DEFAULT_SETTINGS : settings));
+        newRecording.setName("tdlib");
+        newRecording.setMaxAge(maxAge == null ? DEFAULT_MAX_AGE : maxAge);
+        newRecording.setToDisk(true);
+        for (Class<? extends jdk.jfr.Event> event : EVENTS) {
+            newRecording.enable(event);
+        }
+        newRecording.start();
+        closeRecording();
+        recording = newRecording;
+        log.info("Started JFR recording with {} settings", settings == null ? DEFAULT_SETTINGS : settings);
+        return status();
+    }
+
+    @ReadOperation
+    public synchronized WebEndpointResponse<Resource> dump() throws IOException {
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Path file = Files.createTempFile("tdlib-", ".jfr");
+        try {
+            recording.dump(file);
+        } catch (IOException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new WebEndpointResponse<>(new TemporaryFileResource(file), WebEndpointResponse.STATUS_OK);
+    }
+
+    @DeleteOperation
+    public synchronized Map<String, Object> stop() {
+        if (recording == null) {
+            return Map.of("state", "NONE");
+        }
+        Map<String, Object> status = status();
+        closeRecording();
+        recording = null;
+        log.info("Stopped JFR recording");
+        status.put("state", RecordingState.CLOSED.name());
+        return status;
+    }
+
+    private Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", recording.getState().name());
+        status.put("startTime", recording.getStartTime());
+        status.put("maxAge", recording.getMaxAge());
+        status.put("size", recording.getSize());
+        return status;
+    }
+
+    private void closeRecording() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    /**
+     * Временный файл выгрузки, удаляемый после отправки ответа
+     */
+    private static final class TemporaryFileResource extends FileSystemResource {
+
+        TemporaryFileResource(Path file) {
+            super(file);
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return new FilterInputStream(super.getInputStream()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        Files.deleteIfExists(getFile().toPath());
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ReadableByteChannel readableChannel() throws IOException {
+            return Channels.newChannel(getInputStream());
+        }
+
+        @Override
+        public boolean isFile() {
+            // Иначе файл отправляется напрямую (zero-copy), минуя getInputStream, и не удаляется
+            return false;
+        }
+    }
+}
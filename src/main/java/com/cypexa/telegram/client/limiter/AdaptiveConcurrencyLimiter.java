@@ -0,0 +1,271 @@
+package com.cypexa.telegram.client.limiter;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.Client;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Ограничитель числа одновременных запросов к TDLib одного клиента.
+ * Лимит подстраивается по задержке ответов TDLib в стиле TCP Vegas: пока задержка близка к минимальной,
+ * лимит растет; когда запросы начинают копиться в очереди TDLib и задержка растет, лимит снижается.
+ * Ошибки перегрузки (flood wait, timeout) уменьшают лимит вдвое.
+ * Запросы сверх лимита ждут в ограниченной очереди; при ее переполнении или слишком долгом ожидании
+ * запрос сразу отклоняется с {@link RequestRejectedException}.
+ * <p>
+ * Очередь разделена на полосы по {@link RequestPriority}: освободившееся место получает самый приоритетный
+ * ожидающий запрос. Чтобы фоновые запросы не голодали, запрос, прождавший дольше starvation-timeout,
+ * допускается вне очереди приоритетов. Фоновые запросы без ожидания занимают не более background-share
+ * от лимита, оставляя место интерактивным.
+ */
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    // Допустимая оценка числа запросов, ожидающих в очереди TDLib
+    private static final double ALPHA = 3;
+    private static final double BETA = 6;
+    // Раз в столько измерений минимальная задержка сбрасывается, чтобы отследить ее рост
+    private static final int MIN_RTT_RESET_SAMPLES = 1000;
+    private static final int FLOOD_ERROR_CODE = 429;
+
+    private final boolean enabled;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueueSize;
+    private final Duration maxQueueTime;
+    private final long starvationTimeoutNanos;
+    private final double backgroundShare;
+
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<Waiter>[] lanes = new ArrayDeque[RequestPriority.values().length];
+    private int queueSize;
+    private double limit;
+    private int inFlight;
+    private long minRttNanos = Long.MAX_VALUE;
+    private int samples;
+
+    public AdaptiveConcurrencyLimiter(TelegramClientProperties.Limiter settings) {
+        this.enabled = settings.getEnabled();
+        this.minLimit = settings.getMinLimit();
+        this.maxLimit = settings.getMaxLimit();
+        this.maxQueueSize = settings.getMaxQueueSize();
+        this.maxQueueTime = settings.getMaxQueueTime();
+        this.starvationTimeoutNanos = settings.getStarvationTimeout().toNanos();
+        this.backgroundShare = settings.getBackgroundShare();
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<>();
+        }
+        this.limit = Math.max(minLimit, Math.min(maxLimit, settings.getInitialLimit()));
+    }
+
+    /**
+     * Выполняет запрос с обычным приоритетом, как только в лимите появится место
+     */
+    public <T> Mono<T> execute(Supplier<Mono<T>> call) {
+        return execute(RequestPriority.NORMAL, call);
+    }
+
+    /**
+     * Выполняет запрос, как только в лимите появится место для запроса с указанным приоритетом
+     */
+    public <T> Mono<T> execute(RequestPriority priority, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.usingWhen(
+                acquire(priority),
+                permit -> call.get(),
+                permit -> Mono.fromRunnable(() -> release(permit, Outcome.SUCCESS)),
+                (permit, error) -> Mono.fromRunnable(() -> release(permit, outcomeOf(error))),
+                permit -> Mono.fromRunnable(() -> release(permit, Outcome.IGNORED)));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueSize() {
+        return queueSize;
+    }
+
+    public synchronized int getQueueSize(RequestPriority priority) {
+        return lanes[priority.ordinal()].size();
+    }
+
+    private Mono<Permit> acquire(RequestPriority priority) {
+        return Mono.<Permit>create(sink -> {
+                    Permit permit = null;
+                    Waiter waiter = null;
+                    boolean rejected = false;
+                    synchronized (this) {
+                        if (inFlight < admissionLimit(priority) && !hasWaitersAtOrAbove(priority)) {
+                            inFlight++;
+                            permit = new Permit();
+                        } else if (queueSize < maxQueueSize) {
+                            waiter = new Waiter(sink, priority);
+                            lanes[priority.ordinal()].add(waiter);
+                            queueSize++;
+                        } else {
+                            rejected = true;
+                        }
+                    }
+
+                    if (permit != null) {
+                        sink.success(permit);
+                    } else if (rejected) {
+                        sink.error(new RequestRejectedException("Too many concurrent Telegram requests"));
+                    } else {
+                        Waiter queued = waiter;
+                        sink.onCancel(() -> cancel(queued));
+                    }
+                })
+                .timeout(maxQueueTime, Mono.error(() -> new RequestRejectedException(
+                        "Telegram request was not admitted in " + maxQueueTime.toMillis() + " ms")));
+    }
+
+    private void cancel(Waiter waiter) {
+        Permit granted;
+        synchronized (this) {
+            if (lanes[waiter.priority.ordinal()].remove(waiter)) {
+                queueSize--;
+                return;
+            }
+            granted = waiter.permit;
+        }
+        // Место выдано одновременно с отменой и уже никому не достанется
+        if (granted != null) {
+            release(granted, Outcome.IGNORED);
+        }
+    }
+
+    private void release(Permit permit, Outcome outcome) {
+        if (!permit.released.compareAndSet(false, true)) {
+            return;
+        }
+        long rttNanos = System.nanoTime() - permit.startNanos;
+        List<Waiter> admitted = null;
+        synchronized (this) {
+            inFlight--;
+            updateLimit(outcome, rttNanos);
+            Waiter waiter;
+            while ((waiter = pollNextWaiter()) != null) {
+                waiter.permit = new Permit();
+                inFlight++;
+                if (admitted == null) {
+                    admitted = new ArrayList<>(2);
+                }
+                admitted.add(waiter);
+            }
+        }
+        if (admitted != null) {
+            for (Waiter waiter : admitted) {
+                waiter.sink.success(waiter.permit);
+            }
+        }
+    }
+
+    private int admissionLimit(RequestPriority priority) {
+        return priority == RequestPriority.BACKGROUND ? Math.max(1, (int) (limit * backgroundShare)) : (int) limit;
+    }
+
+    // Вызывается под блокировкой
+    private boolean hasWaitersAtOrAbove(RequestPriority priority) {
+        for (int i = 0; i <= priority.ordinal(); i++) {
+            if (!lanes[i].isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Вызывается под блокировкой; возвращает ожидающий запрос, для которого есть место в лимите
+    private Waiter pollNextWaiter() {
+        if (queueSize == 0 || inFlight >= (int) limit) {
+            return null;
+        }
+        long now = System.nanoTime();
+        // Защита от голодания: сначала проверяем давно ждущие запросы низших приоритетов
+        for (int i = lanes.length - 1; i > 0; i--) {
+            Waiter head = lanes[i].peek();
+            if (head != null && now - head.enqueuedNanos >= starvationTimeoutNanos) {
+                queueSize--;
+                return lanes[i].poll();
+            }
+        }
+        for (RequestPriority priority : RequestPriority.values()) {
+            ArrayDeque<Waiter> lane = lanes[priority.ordinal()];
+            if (!lane.isEmpty() && inFlight < admissionLimit(priority)) {
+                queueSize--;
+                return lane.poll();
+            }
+        }
+        return null;
+    }
+
+    private void updateLimit(Outcome outcome, long rttNanos) {
+        double oldLimit = limit;
+        if (outcome == Outcome.DROPPED) {
+            limit = Math.max(minLimit, limit / 2);
+        } else if (outcome == Outcome.SUCCESS) {
+            if (rttNanos < minRttNanos || ++samples % MIN_RTT_RESET_SAMPLES == 0) {
+                minRttNanos = Math.max(1, rttNanos);
+            }
+            double queueSize = limit * (1 - (double) minRttNanos / Math.max(rttNanos, minRttNanos));
+            if (queueSize < ALPHA && inFlight * 2 >= limit) {
+                // Увеличиваем лимит, только если он действительно используется
+                limit = Math.min(maxLimit, limit + 1);
+            } else if (queueSize > BETA) {
+                limit = Math.max(minLimit, limit - 1);
+            }
+        }
+        if ((int) oldLimit != (int) limit) {
+            log.debug("Telegram request limit changed: {} -> {}", (int) oldLimit, (int) limit);
+        }
+    }
+
+    private static Outcome outcomeOf(Throwable error) {
+        if (error instanceof Client.TdlibException e) {
+            int code = e.error.code;
+            return code == FLOOD_ERROR_CODE || code == Client.TIMEOUT_ERROR_CODE ? Outcome.DROPPED : Outcome.SUCCESS;
+        }
+        return Outcome.IGNORED;
+    }
+
+    private enum Outcome {
+        // Ответ получен, задержка учитывается в лимите
+        SUCCESS,
+        // Признак перегрузки
+        DROPPED,
+        // Запрос отменен или завершился не из-за TDLib
+        IGNORED
+    }
+
+    private static class Permit {
+        final long startNanos = System.nanoTime();
+        final AtomicBoolean released = new AtomicBoolean();
+    }
+
+    private static class Waiter {
+        final MonoSink<Permit> sink;
+        final RequestPriority priority;
+        final long enqueuedNanos = System.nanoTime();
+        Permit permit;
+
+        Waiter(MonoSink<Permit> sink, RequestPriority priority) {
+            this.sink = sink;
+            this.priority = priority;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.cypexa.telegram.client.limiter;
+
+/**
+ * Класс приоритета запроса к TDLib. При заполненном лимите одновременных запросов
+ * ожидающие запросы допускаются к TDLib в порядке приоритета
+ */
+public enum RequestPriority {
+    // Запросы, которых ждет пользователь: отправка сообщений и т.п.
+    INTERACTIVE,
+    NORMAL,
+    // Массовая фоновая работа: загрузка списков чатов, наборов стикеров, файлов
+    BACKGROUND
+}
@@ -0,0 +1,11 @@
+package com.cypexa.telegram.client.limiter;
+
+/**
+ * Запрос к TDLib отклонен из-за превышения лимита одновременных запросов
+ */
+public class RequestRejectedException extends RuntimeException {
+
+    public RequestRejectedException(String message) {
+        super(message, null, false, false);
+    }
+}
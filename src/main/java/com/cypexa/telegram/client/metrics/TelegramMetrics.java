@@ -0,0 +1,299 @@
+package com.cypexa.telegram.client.metrics;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Метрики клиента TDLib:
+ * <ul>
+ *     <li>{@code tdlib.queries} - время от отправки запроса до результата, теги function и outcome
+ *     (ok, timeout, cancelled или код ошибки TDLib);</li>
+ *     <li>{@code tdlib.queries.pending} - число запросов, ожидающих ответа;</li>
+ *     <li>{@code tdlib.receiver.events}, {@code tdlib.receiver.batches}, {@code tdlib.receiver.batch.fill} -
+ *     поток приема событий и заполненность последней пачки событий (1 - поток приема не успевает);</li>
+ *     <li>{@code tdlib.updates} - число и время обработки обновлений, тег type;</li>
+ *     <li>{@code tdlib.updates.lag} - гистограмма задержки от даты события на сервере Telegram до окончания
+ *     обработки обновления, тег type; {@code tdlib.updates.lag.last} - задержка последнего обновления
+ *     этого типа для оповещений.</li>
+ * </ul>
+ * Таймеры кэшируются по типу запроса и обновления, чтобы не искать их в реестре на каждое событие;
+ * кэш индексируется конструктором TDLib без упаковки в {@link Integer}.
+ */
+@Component
+public class TelegramMetrics {
+
+    private static final String OUTCOME_OK = "ok";
+    private static final String OUTCOME_TIMEOUT = "timeout";
+    private static final String OUTCOME_CANCELLED = "cancelled";
+    private static final int EXCEPTION_CODE = -1;
+
+    private static final Duration MIN_UPDATE_LAG = Duration.ofMillis(100);
+
+    private final MeterRegistry meterRegistry;
+    private final long maxUpdateLagMillis;
+    private final MeterTable<QueryTimers> queryTimers = new MeterTable<>();
+    private final MeterTable<Timer> updateTimers = new MeterTable<>();
+    private final MeterTable<UpdateLag> updateLags = new MeterTable<>();
+
+    public TelegramMetrics(MeterRegistry meterRegistry, TelegramClientProperties properties) {
+        this.meterRegistry = meterRegistry;
+        this.maxUpdateLagMillis = properties.getMetrics().getMaxUpdateLag().toMillis();
+
+        Gauge.builder("tdlib.queries.pending", Client::getPendingQueryCount)
+                .description("Number of TDLib queries waiting for a result")
+                .register(meterRegistry);
+        FunctionCounter.builder("tdlib.receiver.events", Client.class, client -> Client.getReceivedEventCount())
+                .description("Number of results and updates received from TDLib")
+                .register(meterRegistry);
+        FunctionCounter.builder("tdlib.receiver.batches", Client.class, client -> Client.getReceivedBatchCount())
+                .description("Number of batches of events received from TDLib")
+                .register(meterRegistry);
+        Gauge.builder("tdlib.receiver.batch.fill", Client::getLastReceivedBatchFill)
+                .description("Fill ratio of the last batch of events received from TDLib")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Измеряет время выполнения запроса к TDLib от подписки до результата
+     */
+    public <R extends TdApi.Object> Mono<R> timeQuery(TdApi.Function<R> function, Mono<R> query) {
+        return Mono.defer(() -> {
+            QueryTimers timers = queryTimers(function);
+            long startNanos = System.nanoTime();
+            return query
+                    .doOnSuccess(result -> timers.ok.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS))
+                    .doOnError(error -> timers.forError(error).record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS))
+                    .doOnCancel(() -> timers.cancelled.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS));
+        });
+    }
+
+    private QueryTimers queryTimers(TdApi.Function<?> function) {
+        QueryTimers timers = queryTimers.get(function.getConstructor());
+        if (timers == null) {
+            timers = queryTimers.computeIfAbsent(function.getConstructor(),
+                    constructor -> new QueryTimers(function.getClass().getSimpleName()));
+        }
+        return timers;
+    }
+
+    /**
+     * Таймер обработки обновлений указанного типа
+     */
+    public Timer updateTimer(TdApi.Object update) {
+        Timer timer = updateTimers.get(update.getConstructor());
+        if (timer == null) {
+            timer = updateTimers.computeIfAbsent(update.getConstructor(), constructor -> Timer.builder("tdlib.updates")
+                    .description("Processing of TDLib updates")
+                    .tag("type", update.getClass().getSimpleName())
+                    .register(meterRegistry));
+        }
+        return timer;
+    }
+
+    /**
+     * Учитывает задержку обработки обновления относительно даты события на сервере.
+     * Дата передается TDLib с точностью до секунды, поэтому задержка меньше секунды неразличима;
+     * расхождение часов сервера и приложения входит в задержку
+     */
+    public void recordUpdateLag(TdApi.Object update) {
+        int serverDate = getServerDate(update);
+        if (serverDate <= 0) {
+            return;
+        }
+        long lagMillis = Math.max(0, System.currentTimeMillis() - serverDate * 1000L);
+        if (lagMillis > maxUpdateLagMillis) {
+            return;
+        }
+        UpdateLag lag = updateLags.get(update.getConstructor());
+        if (lag == null) {
+            lag = updateLags.computeIfAbsent(update.getConstructor(),
+                    constructor -> new UpdateLag(update.getClass().getSimpleName()));
+        }
+        lag.record(lagMillis);
+    }
+
+    /**
+     * Дата события на сервере в секундах Unix time или 0, если обновление не содержит даты
+     */
+    private static int getServerDate(TdApi.Object update) {
+        switch (update.getConstructor()) {
+            case TdApi.UpdateNewMessage.CONSTRUCTOR:
+                return ((TdApi.UpdateNewMessage) update).message.date;
+            case TdApi.UpdateMessageSendSucceeded.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageSendSucceeded) update).message.date;
+            case TdApi.UpdateChatLastMessage.CONSTRUCTOR: {
+                TdApi.Message lastMessage = ((TdApi.UpdateChatLastMessage) update).lastMessage;
+                return lastMessage == null ? 0 : lastMessage.date;
+            }
+            case TdApi.UpdateMessageEdited.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageEdited) update).editDate;
+            case TdApi.UpdateMessageReaction.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageReaction) update).date;
+            case TdApi.UpdateChatMember.CONSTRUCTOR:
+                return ((TdApi.UpdateChatMember) update).date;
+            case TdApi.UpdateNewChatJoinRequest.CONSTRUCTOR:
+                return ((TdApi.UpdateNewChatJoinRequest) update).request.date;
+            default:
+                return 0;
+        }
+    }
+
+    private final class UpdateLag {
+        final Timer histogram;
+        final AtomicLong lastMillis = new AtomicLong();
+
+        UpdateLag(String type) {
+            this.histogram = Timer.builder("tdlib.updates.lag")
+                    .description("Time from the server date of a TDLib update to the end of its processing")
+                    .tag("type", type)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(MIN_UPDATE_LAG)
+                    .maximumExpectedValue(Duration.ofMillis(maxUpdateLagMillis))
+                    .register(meterRegistry);
+            Gauge.builder("tdlib.updates.lag.last", lastMillis, AtomicLong::get)
+                    .description("Lag of the last processed TDLib update of the type")
+                    .tag("type", type)
+                    .baseUnit("milliseconds")
+                    .register(meterRegistry);
+        }
+
+        void record(long lagMillis) {
+            histogram.record(lagMillis, TimeUnit.MILLISECONDS);
+            lastMillis.set(lagMillis);
+        }
+    }
+
+    private final class QueryTimers {
+        final String function;
+        final Timer ok;
+        final Timer timeout;
+        final Timer cancelled;
+        final MeterTable<Timer> errors = new MeterTable<>();
+
+        QueryTimers(String function) {
+            this.function = function;
+            this.ok = queryTimer(function, OUTCOME_OK);
+            this.timeout = queryTimer(function, OUTCOME_TIMEOUT);
+            this.cancelled = queryTimer(function, OUTCOME_CANCELLED);
+        }
+
+        Timer forError(Throwable error) {
+            int code = error instanceof Client.TdlibException tdlibError ? tdlibError.error.code : EXCEPTION_CODE;
+            if (code == Client.TIMEOUT_ERROR_CODE) {
+                return timeout;
+            }
+            Timer timer = errors.get(code);
+            if (timer == null) {
+                timer = errors.computeIfAbsent(code,
+                        key -> queryTimer(function, key == EXCEPTION_CODE ? "exception" : String.valueOf(key)));
+            }
+            return timer;
+        }
+    }
+
+    private Timer queryTimer(String function, String outcome) {
+        return Timer.builder("tdlib.queries")
+                .description("Time from sending a TDLib query to its result")
+                .tag("function", function)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Кэш метрик по конструктору TDLib: открытая адресация на массиве int, чтобы поиск не упаковывал ключ.
+     * Чтение идет без блокировок по неизменяемому снимку, при добавлении снимок копируется под блокировкой -
+     * типов запросов и обновлений немного, и новые появляются только в начале работы
+     */
+    private static final class MeterTable<T> {
+        private volatile Snapshot<T> snapshot = new Snapshot<>(8);
+
+        T get(int key) {
+            return snapshot.get(key);
+        }
+
+        synchronized T computeIfAbsent(int key, IntFunction<T> factory) {
+            Snapshot<T> current = snapshot;
+            T value = current.get(key);
+            if (value == null) {
+                value = factory.apply(key);
+                snapshot = current.with(key, value);
+            }
+            return value;
+        }
+    }
+
+    private static final class Snapshot<T> {
+        final int[] keys;
+        final Object[] values;
+        final int mask;
+        final int size;
+
+        Snapshot(int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            size = 0;
+        }
+
+        private Snapshot(Snapshot<T> source, int capacity) {
+            keys = new int[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+            size = source.size + 1;
+            for (int i = 0; i < source.values.length; i++) {
+                if (source.values[i] != null) {
+                    put(source.keys[i], source.values[i]);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        T get(int key) {
+            int slot = slot(key);
+            Object value;
+            while ((value = values[slot]) != null) {
+                if (keys[slot] == key) {
+                    return (T) value;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        Snapshot<T> with(int key, T value) {
+            int capacity = values.length;
+            if ((size + 1) * 2 > capacity) {
+                capacity <<= 1;
+            }
+            Snapshot<T> result = new Snapshot<>(this, capacity);
+            result.put(key, value);
+            return result;
+        }
+
+        private void put(int key, Object value) {
+            int slot = slot(key);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+        }
+
+        private int slot(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
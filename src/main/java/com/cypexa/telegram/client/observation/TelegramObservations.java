@@ -0,0 +1,144 @@
+package com.cypexa.telegram.client.observation;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import io.micrometer.observation.contextpropagation.ObservationThreadLocalAccessor;
+import org.drinkless.tdlib.TdApi;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.util.context.ContextView;
+
+import java.util.function.Function;
+
+/**
+ * Наблюдения Micrometer Observation для операций сервисов и запросов к TDLib.
+ * Операция ({@code telegram.operation}) - дочерний span HTTP-запроса, запрос к TDLib ({@code tdlib.request}) -
+ * дочерний span операции с тегом function. В span запроса записываются время ожидания в очереди
+ * ограничителя (queue.wait.us) и время ответа TDLib (tdlib.time.us), в span операции - время преобразования
+ * ответа после последнего запроса (conversion.time.us), в микросекундах. Родительское наблюдение берется из контекста Reactor,
+ * куда его помещает WebFlux. Без настроенного ObservationRegistry наблюдения не создаются.
+ */
+@Component
+public class TelegramObservations {
+
+    public static final String OPERATION_OBSERVATION = "telegram.operation";
+    public static final String REQUEST_OBSERVATION = "tdlib.request";
+
+    private static final Observation.Event SENT = Observation.Event.of("tdlib.sent", "Query sent to TDLib");
+    private static final Runnable NOT_OBSERVED = () -> {
+    };
+
+    private final ObservationRegistry observationRegistry;
+
+    public TelegramObservations(ObservationRegistry observationRegistry) {
+        this.observationRegistry = observationRegistry;
+    }
+
+    /**
+     * Наблюдение операции сервиса: от подписки до результата, включая запросы к TDLib и преобразование ответа
+     */
+    public <T> Mono<T> observeOperation(String operation, Mono<T> call) {
+        if (observationRegistry.isNoop()) {
+            return call;
+        }
+        return Mono.deferContextual(context -> {
+            Observation observation = Observation.createNotStarted(OPERATION_OBSERVATION, observationRegistry)
+                    .contextualName(operation)
+                    .lowCardinalityKeyValue("operation", operation)
+                    .parentObservation(getParent(context))
+                    .start();
+            OperationTiming timing = new OperationTiming();
+            return call
+                    .doOnSuccess(result -> {
+                        long lastResponseNanos = timing.lastResponseNanos;
+                        if (lastResponseNanos != 0) {
+                            observation.highCardinalityKeyValue("conversion.time.us",
+                                    toMicros(System.nanoTime() - lastResponseNanos));
+                        }
+                        observation.stop();
+                    })
+                    .doOnError(error -> {
+                        observation.error(error);
+                        observation.stop();
+                    })
+                    .doOnCancel(observation::stop)
+                    .contextWrite(c -> c.put(ObservationThreadLocalAccessor.KEY, observation)
+                            .put(OperationTiming.class, timing));
+        });
+    }
+
+    /**
+     * Наблюдение запроса к TDLib. Фабрика запроса получает отметку отправки, которую нужно вызвать,
+     * когда ограничитель пропустил запрос и он отправляется в TDLib
+     */
+    public <R extends TdApi.Object> Mono<R> observeRequest(TdApi.Function<R> function,
+                                                           Function<Runnable, Mono<R>> request) {
+        if (observationRegistry.isNoop()) {
+            return request.apply(NOT_OBSERVED);
+        }
+        return Mono.deferContextual(context -> {
+            Observation observation = Observation.createNotStarted(REQUEST_OBSERVATION, observationRegistry)
+                    .contextualName(function.getClass().getSimpleName())
+                    .lowCardinalityKeyValue("function", function.getClass().getSimpleName())
+                    .parentObservation(getParent(context))
+                    .start();
+            OperationTiming operationTiming = context.getOrDefault(OperationTiming.class, null);
+            RequestTiming timing = new RequestTiming(System.nanoTime());
+            return request.apply(() -> {
+                        timing.sentNanos = System.nanoTime();
+                        observation.event(SENT);
+                    })
+                    .doOnSuccess(result -> {
+                        long nowNanos = timing.stop(observation);
+                        if (operationTiming != null) {
+                            operationTiming.lastResponseNanos = nowNanos;
+                        }
+                        observation.stop();
+                    })
+                    .doOnError(error -> {
+                        timing.stop(observation);
+                        observation.error(error);
+                        observation.stop();
+                    })
+                    .doOnCancel(() -> {
+                        timing.stop(observation);
+                        observation.stop();
+                    })
+                    .contextWrite(c -> c.put(ObservationThreadLocalAccessor.KEY, observation));
+        });
+    }
+
+    private static Observation getParent(ContextView context) {
+        return context.getOrDefault(ObservationThreadLocalAccessor.KEY, null);
+    }
+
+    private static String toMicros(long nanos) {
+        return Long.toString(nanos / 1000);
+    }
+
+    private static final class OperationTiming {
+        volatile long lastResponseNanos;
+    }
+
+    private static final class RequestTiming {
+        final long startNanos;
+        volatile long sentNanos;
+
+        RequestTiming(long startNanos) {
+            this.startNanos = startNanos;
+        }
+
+        long stop(Observation observation) {
+            long nowNanos = System.nanoTime();
+            long sent = sentNanos;
+            if (sent == 0) {
+                // запрос не дошел до TDLib: отклонен ограничителем или отменен в очереди
+                observation.highCardinalityKeyValue("queue.wait.us", toMicros(nowNanos - startNanos));
+            } else {
+                observation.highCardinalityKeyValue("queue.wait.us", toMicros(sent - startNanos));
+                observation.highCardinalityKeyValue("tdlib.time.us", toMicros(nowNanos - sent));
+            }
+            return nowNanos;
+        }
+    }
+}
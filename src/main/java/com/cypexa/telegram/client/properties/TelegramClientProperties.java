@@ -1,8 +1,13 @@
 package com.cypexa.telegram.client.properties;
 
+import com.cypexa.telegram.client.update.UpdateOverflowStrategy;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
 @Data
 @ConfigurationProperties(prefix = "spring.telegram.client")
 public class TelegramClientProperties {
@@ -21,4 +26,164 @@ public class TelegramClientProperties {
     private String databaseDirectory = "./tdlib";
     private String filesDirectory = "./tdlib";
     private Integer logVerbosityLevel = 0; // 0 - NEVER, 1 - ERROR, 2 - WARNING, 3 - INFO, 4 - DEBUG, 5 - VERBOSE
-} 
\ No newline at end of file
+    private Dispatcher dispatcher = new Dispatcher();
+    private Timeouts timeouts = new Timeouts();
+    private Limiter limiter = new Limiter();
+    private Coalescing coalescing = new Coalescing();
+    private Fake fake = new Fake();
+    private Trace trace = new Trace();
+    private Health health = new Health();
+    private Metrics metrics = new Metrics();
+    private RequestLogging requestLogging = new RequestLogging();
+    private UpdateBus updateBus = new UpdateBus();
+    private ChatList chatList = new ChatList();
+    private ChatStore chatStore = new ChatStore();
+
+    /**
+     * Параметры обработки событий TDLib: ответов на запросы и обновлений
+     */
+    @Data
+    public static class Dispatcher {
+        private DispatchMode mode = DispatchMode.RECEIVER;
+        // Число потоков для SHARDED и SCHEDULER
+        private Integer threads = Runtime.getRuntime().availableProcessors();
+        // Число партиций с сохранением порядка для VIRTUAL и SCHEDULER
+        private Integer partitions = 256;
+        private Integer queueCapacity = 10000;
+    }
+
+    public enum DispatchMode {
+        // Все обработчики выполняются в потоке приема событий TDLib
+        RECEIVER,
+        // Фиксированный пул потоков, партиция закреплена за потоком
+        SHARDED,
+        // Виртуальные потоки
+        VIRTUAL,
+        // Ограниченный Reactor Scheduler (boundedElastic)
+        SCHEDULER
+    }
+
+    /**
+     * Время ожидания ответа TDLib: общее и для отдельных типов запросов (по имени класса TdApi, например GetChat)
+     */
+    @Data
+    public static class Timeouts {
+        private Duration defaultTimeout = Duration.ofSeconds(30);
+        private Map<String, Duration> functions = new HashMap<>();
+    }
+
+    /**
+     * Адаптивное ограничение числа одновременных запросов к TDLib
+     */
+    @Data
+    public static class Limiter {
+        private Boolean enabled = false;
+        private Integer initialLimit = 20;
+        private Integer minLimit = 2;
+        private Integer maxLimit = 500;
+        private Integer maxQueueSize = 1000;
+        private Duration maxQueueTime = Duration.ofSeconds(5);
+        // Запрос низкого приоритета, ждущий дольше, допускается вне очереди приоритетов
+        private Duration starvationTimeout = Duration.ofSeconds(1);
+        // Доля лимита, которую могут занять фоновые запросы
+        private Double backgroundShare = 0.75;
+    }
+
+    /**
+     * Объединение одновременных одинаковых запросов на чтение (GetChat, GetStickerSet и т.п.)
+     */
+    @Data
+    public static class Coalescing {
+        private Boolean enabled = false;
+    }
+
+    /**
+     * Встроенная имитация TDLib для нагрузочного тестирования без аккаунта Telegram и сети
+     */
+    @Data
+    public static class Fake {
+        private Boolean enabled = false;
+        // Задержка ответа выбирается равномерно из [min-latency, max-latency]
+        private Duration minLatency = Duration.ofMillis(1);
+        private Duration maxLatency = Duration.ofMillis(5);
+        // Доля запросов (кроме авторизации), на которые возвращается ошибка error-code
+        private Double errorRate = 0.0;
+        private Integer errorCode = 500;
+        private Integer chatCount = 1000;
+        // Число папок; чаты распределяются по папкам поровну и загружаются вместе с основным списком
+        private Integer folderCount = 0;
+        private Integer stickerSetCount = 20;
+        private Integer stickersPerSet = 30;
+        // Число новых сообщений в секунду в загруженных чатах, 0 - без обновлений
+        private Integer updateRate = 0;
+    }
+
+    /**
+     * Запись входящих обновлений TDLib в файл для воспроизведения при нагрузочном тестировании
+     */
+    @Data
+    public static class Trace {
+        // Путь к файлу записи; если не задан, обновления не записываются
+        private String file;
+    }
+
+    /**
+     * Проверка состояния клиента TDLib (actuator health): при превышении порогов статус DEGRADED
+     */
+    @Data
+    public static class Health {
+        // Время ожидания ответа на TestCallEmpty, после которого статус DOWN
+        private Duration pingTimeout = Duration.ofSeconds(5);
+        private Duration degradedPingLatency = Duration.ofSeconds(1);
+        private Integer degradedPendingQueries = 1000;
+    }
+
+    /**
+     * Метрики клиента TDLib
+     */
+    @Data
+    public static class Metrics {
+        // Обновления с датой старше этого срока (история, последнее сообщение загруженного чата)
+        // не учитываются в задержке обработки обновлений
+        private Duration maxUpdateLag = Duration.ofHours(1);
+    }
+
+    /**
+     * Логирование входящих запросов контроллеров чатов и стикеров
+     */
+    @Data
+    public static class RequestLogging {
+        // Доля логируемых запросов: 0 - не логировать, 1 - логировать все
+        private Double sampleRate = 0.01;
+    }
+
+    /**
+     * Параметры подписки на TelegramUpdateBus по умолчанию
+     */
+    @Data
+    public static class UpdateBus {
+        // Число необработанных обновлений, которое хранится для каждого подписчика
+        private Integer bufferSize = 1024;
+        private UpdateOverflowStrategy overflowStrategy = UpdateOverflowStrategy.DROP_OLDEST;
+    }
+
+    /**
+     * Загрузка списка чатов из TDLib
+     */
+    @Data
+    public static class ChatList {
+        // Загружать список в фоне после авторизации; иначе - с первого запроса, которому не хватает чатов
+        private Boolean preload = true;
+        // Число чатов в одном запросе LoadChats
+        private Integer chunkSize = 100;
+    }
+
+    /**
+     * Локальное хранилище чатов
+     */
+    @Data
+    public static class ChatStore {
+        // Хранить полные объекты TdApi.Chat вместе с компактными колонками полей ответа
+        private Boolean keepFullObjects = false;
+    }
+}
@@ -1,11 +1,19 @@
 package com.cypexa.telegram.client.service;
 
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
+import com.cypexa.telegram.client.jfr.TdlibQueryEvent;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
+import com.cypexa.telegram.client.limiter.RequestPriority;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.observation.TelegramObservations;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor
 @Slf4j
@@ -13,55 +21,74 @@ public abstract class BaseTelegramService {
 
     protected final Client telegramClient;
     protected final TelegramAuthService authService;
+    protected final AdaptiveConcurrencyLimiter requestLimiter;
+    protected final QueryCoalescer queryCoalescer;
+    protected final TelegramMetrics metrics;
+    protected final TelegramObservations observations;
 
     /**
-     * Выполняет операцию с проверкой авторизации
+     * Выполняет операцию с проверкой авторизации.
+     * Операция наблюдается как {@link TelegramObservations#OPERATION_OBSERVATION}; ошибка передается
+     * вызывающему и логируется в TelegramControllerAdvice, здесь - только кратко на уровне debug
      */
-    protected <T> Mono<T> executeWithAuth(String operationName, AuthorizedOperation<T> operation) {
-        return Mono.<T>create(sink -> {
+    protected <T> Mono<T> executeWithAuth(String operationName, Supplier<Mono<T>> operation) {
+        return observations.observeOperation(operationName, Mono.defer(() -> {
                     if (!authService.isAuthorized()) {
-                        sink.error(new RuntimeException("Not authorized"));
-                        return;
+                        return Mono.<T>error(new RuntimeException("Not authorized"));
                     }
+                    return operation.get();
+                }))
+                .doOnError(error -> log.debug("Failed operation {}: {}", operationName, error.toString()));
+    }
 
-                    try {
-                        operation.execute(sink);
-                    } catch (Exception e) {
-                        log.error("Error executing {}: {}", operationName, e.getMessage(), e);
-                        sink.error(e);
-                    }
-                })
-                .doOnSubscribe(subscription -> log.debug("Starting operation: {}", operationName))
-                .doOnSuccess(result -> log.debug("Successfully completed operation: {}", operationName))
-                .doOnError(error -> log.error("Failed operation: {}", operationName, error));
+    /**
+     * Отправляет запрос через Telegram клиент с обычным приоритетом.
+     * Время ожидания ответа - по умолчанию для типа запроса (spring.telegram.client.timeouts).
+     * Ошибка TDLib передается как {@link Client.TdlibException}.
+     * Отмена подписки (разрыв HTTP-соединения, timeout) отменяет ожидание ответа в клиенте.
+     * Число одновременных запросов ограничено {@link AdaptiveConcurrencyLimiter},
+     * одинаковые запросы на чтение объединяются {@link QueryCoalescer}.
+     * Время ответа TDLib учитывается в метрике tdlib.queries ({@link TelegramMetrics})
+     * и в событии JFR {@link TdlibQueryEvent}; запрос наблюдается как {@link TelegramObservations#REQUEST_OBSERVATION}
+     * с временем ожидания в очереди ограничителя
+     */
+    protected <R extends TdApi.Object> Mono<R> sendTelegramRequest(TdApi.Function<R> request) {
+        return sendTelegramRequest(request, RequestPriority.NORMAL);
     }
 
     /**
-     * Отправляет запрос через Telegram клиент с обработкой результата
+     * Отправляет запрос через Telegram клиент с указанным приоритетом
      */
-    protected <T> void sendTelegramRequest(TdApi.Function request,
-                                           MonoSink<T> sink,
-                                           ResultHandler<T> resultHandler) {
-        telegramClient.send(request, result -> {
-            try {
-                if (result instanceof TdApi.Error error) {
-                    sink.error(new RuntimeException("Telegram API error: " + error.message));
-                } else {
-                    resultHandler.handle(result, sink);
-                }
-            } catch (Exception e) {
-                sink.error(e);
-            }
-        });
+    protected <R extends TdApi.Object> Mono<R> sendTelegramRequest(TdApi.Function<R> request, RequestPriority priority) {
+        return sendTelegramRequest(request, priority, () -> telegramClient.sendAsync(request));
     }
 
-    @FunctionalInterface
-    protected interface AuthorizedOperation<T> {
-        void execute(MonoSink<T> sink) throws Exception;
+    /**
+     * Отправляет запрос через Telegram клиент с указанным приоритетом и явным временем ожидания ответа
+     */
+    protected <R extends TdApi.Object> Mono<R> sendTelegramRequest(TdApi.Function<R> request,
+                                                                   RequestPriority priority,
+                                                                   Duration timeout) {
+        return sendTelegramRequest(request, priority, () -> telegramClient.sendAsync(request, timeout.toMillis()));
     }
 
-    @FunctionalInterface
-    protected interface ResultHandler<T> {
-        void handle(TdApi.Object result, MonoSink<T> sink) throws Exception;
+    private <R extends TdApi.Object> Mono<R> sendTelegramRequest(TdApi.Function<R> request,
+                                                                 RequestPriority priority,
+                                                                 Supplier<Client.QueryFuture<R>> send) {
+        return queryCoalescer.execute(request, () -> observations.observeRequest(request,
+                sent -> requestLimiter.execute(priority, () -> {
+                    sent.run();
+                    return metrics.timeQuery(request, sendQuery(request, send));
+                })));
+    }
+
+    // Отправляет запрос при подписке. Mono.fromFuture без подавления отмены: отмена подписки отменяет
+    // QueryFuture, и клиент убирает запрос из таблицы ожидающих ответа
+    static <R extends TdApi.Object> Mono<R> sendQuery(TdApi.Function<R> request,
+                                                      Supplier<Client.QueryFuture<R>> send) {
+        return Mono.defer(() -> {
+            Client.QueryFuture<R> future = send.get();
+            return TdlibQueryEvent.record(request, future.getQueryId(), Mono.fromFuture(future, false));
+        });
     }
-} 
\ No newline at end of file
+}
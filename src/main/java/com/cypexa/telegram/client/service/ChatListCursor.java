@@ -0,0 +1,32 @@
+package com.cypexa.telegram.client.service;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Курсор страницы списка чатов: позиция (order, id) последнего чата предыдущей страницы.
+ * Передается клиенту как непрозрачная строка base64url
+ */
+record ChatListCursor(long order, long chatId) {
+
+    private static final int SIZE = 2 * Long.BYTES;
+
+    String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE).putLong(order).putLong(chatId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    static ChatListCursor decode(String cursor) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed chat list cursor: " + cursor);
+        }
+        if (bytes.length != SIZE) {
+            throw new IllegalArgumentException("Malformed chat list cursor: " + cursor);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        return new ChatListCursor(buffer.getLong(), buffer.getLong());
+    }
+}
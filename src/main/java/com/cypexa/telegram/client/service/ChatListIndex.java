@@ -0,0 +1,82 @@
+package com.cypexa.telegram.client.service;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Упорядоченный индекс списка чатов TDLib (по убыванию order, затем id чата).
+ * Чтение не блокируется и не мешает обработке обновлений; изменение - O(log n).
+ * <p>
+ * Позиции одного чата изменяются под блокировкой этого чата, поэтому изменения разных чатов
+ * выполняются параллельно. Чтение слабо согласовано: при перемещении чата он может
+ * на мгновение отсутствовать в выдаче.
+ */
+final class ChatListIndex {
+
+    private final NavigableSet<OrderedChat> chats = new ConcurrentSkipListSet<>();
+    // ConcurrentSkipListSet.size() обходит весь список
+    private final AtomicInteger size = new AtomicInteger();
+
+    void add(long chatId, long order) {
+        if (chats.add(new OrderedChat(chatId, order))) {
+            size.incrementAndGet();
+        }
+    }
+
+    void remove(long chatId, long order) {
+        if (chats.remove(new OrderedChat(chatId, order))) {
+            size.decrementAndGet();
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Страница из limit чатов после курсора (с начала списка, если курсор null).
+     * Поиск позиции курсора - O(log n); чаты, перемещенные выше курсора, на следующих страницах не появятся
+     */
+    Page page(ChatListCursor after, int limit) {
+        NavigableSet<OrderedChat> tail = after == null ? chats
+                : chats.tailSet(new OrderedChat(after.chatId(), after.order()), false);
+        if (limit <= 0) {
+            return new Page(new long[0], null, !tail.isEmpty());
+        }
+        long[] chatIds = new long[Math.min(limit, size())];
+        Iterator<OrderedChat> iter = tail.iterator();
+        OrderedChat last = null;
+        int count = 0;
+        while (count < chatIds.length && iter.hasNext()) {
+            last = iter.next();
+            chatIds[count++] = last.chatId;
+        }
+        ChatListCursor next = last == null ? null : new ChatListCursor(last.order, last.chatId);
+        // Список мог уменьшиться после чтения размера
+        return new Page(count == chatIds.length ? chatIds : Arrays.copyOf(chatIds, count), next, iter.hasNext());
+    }
+
+    /**
+     * Страница списка: id чатов, курсор последнего чата и есть ли в индексе чаты после него
+     */
+    record Page(long[] chatIds, ChatListCursor last, boolean hasMore) {
+    }
+
+    // Ключ индекса: позиция чата в списке
+    private record OrderedChat(long chatId, long order) implements Comparable<OrderedChat> {
+
+        @Override
+        public int compareTo(OrderedChat o) {
+            if (this.order != o.order) {
+                return o.order < this.order ? -1 : 1;
+            }
+            if (this.chatId != o.chatId) {
+                return o.chatId < this.chatId ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+}
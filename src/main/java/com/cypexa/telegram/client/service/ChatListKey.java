@@ -0,0 +1,69 @@
+package com.cypexa.telegram.client.service;
+
+import org.drinkless.tdlib.TdApi;
+
+/**
+ * Идентификатор списка чатов TDLib: основной, архив или папка.
+ * В API передается строкой: main, archive, folder:&lt;id&gt;
+ */
+record ChatListKey(int constructor, int folderId) {
+
+    static final ChatListKey MAIN = new ChatListKey(TdApi.ChatListMain.CONSTRUCTOR, 0);
+    static final ChatListKey ARCHIVE = new ChatListKey(TdApi.ChatListArchive.CONSTRUCTOR, 0);
+
+    private static final String FOLDER_PREFIX = "folder:";
+
+    static ChatListKey of(TdApi.ChatList chatList) {
+        switch (chatList.getConstructor()) {
+            case TdApi.ChatListMain.CONSTRUCTOR:
+                return MAIN;
+            case TdApi.ChatListArchive.CONSTRUCTOR:
+                return ARCHIVE;
+            case TdApi.ChatListFolder.CONSTRUCTOR:
+                return new ChatListKey(TdApi.ChatListFolder.CONSTRUCTOR, ((TdApi.ChatListFolder) chatList).chatFolderId);
+            default:
+                throw new IllegalArgumentException("Unsupported chat list: " + chatList.getClass().getSimpleName());
+        }
+    }
+
+    static ChatListKey parse(String chatList) {
+        if (chatList == null || chatList.isEmpty() || chatList.equals("main")) {
+            return MAIN;
+        }
+        if (chatList.equals("archive")) {
+            return ARCHIVE;
+        }
+        if (chatList.startsWith(FOLDER_PREFIX)) {
+            try {
+                return new ChatListKey(TdApi.ChatListFolder.CONSTRUCTOR,
+                        Integer.parseInt(chatList.substring(FOLDER_PREFIX.length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Unknown chat list: " + chatList);
+            }
+        }
+        throw new IllegalArgumentException("Unknown chat list: " + chatList);
+    }
+
+    TdApi.ChatList toChatList() {
+        switch (constructor) {
+            case TdApi.ChatListMain.CONSTRUCTOR:
+                return new TdApi.ChatListMain();
+            case TdApi.ChatListArchive.CONSTRUCTOR:
+                return new TdApi.ChatListArchive();
+            default:
+                return new TdApi.ChatListFolder(folderId);
+        }
+    }
+
+    @Override
+    public String toString() {
+        switch (constructor) {
+            case TdApi.ChatListMain.CONSTRUCTOR:
+                return "main";
+            case TdApi.ChatListArchive.CONSTRUCTOR:
+                return "archive";
+            default:
+                return FOLDER_PREFIX + folderId;
+        }
+    }
+}
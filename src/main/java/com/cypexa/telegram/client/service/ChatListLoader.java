@@ -0,0 +1,111 @@
+package com.cypexa.telegram.client.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntFunction;
+
+/**
+ * Фоновая загрузка списка чатов запросами LoadChats по chunkSize чатов до ответа 404.
+ * Загрузка выполняется одна на всех: запросы, которым не хватает чатов, ждут ее продвижения,
+ * а не отправляют собственные LoadChats. Сами чаты приходят через updates и попадают в индекс списка.
+ * <p>
+ * Продвижение публикуется числом чатов в индексе после каждой порции; ожидающий запрос
+ * продолжается, как только чатов достаточно, не дожидаясь загрузки всего списка.
+ * <p>
+ * Ответ на LoadChats обрабатывается в партиции клиента, а позиции чатов - в партициях чатов, поэтому
+ * в параллельных режимах диспетчера ответ может опередить свои updates. Продвижение и окончание загрузки
+ * публикуются только после обработки всех событий, полученных до ответа.
+ */
+@Slf4j
+final class ChatListLoader {
+
+    private final String name;
+    private final ChatListIndex index;
+    private final IntFunction<Mono<TdApi.Ok>> loadChats;
+    private final int chunkSize;
+
+    private volatile boolean fullyLoaded = false;
+    // Продвижение текущей загрузки; null - загрузка не выполняется
+    private Sinks.Many<Integer> currentLoad;
+
+    ChatListLoader(String name, ChatListIndex index, IntFunction<Mono<TdApi.Ok>> loadChats, int chunkSize) {
+        this.name = name;
+        this.index = index;
+        this.loadChats = loadChats;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Завершается, когда в индексе не меньше count чатов или список загружен полностью.
+     * Ошибка загрузки передается ожидающим; следующий вызов начинает загрузку заново
+     */
+    Mono<Void> ensureLoaded(int count) {
+        if (fullyLoaded || index.size() >= count) {
+            return Mono.empty();
+        }
+        return start().asFlux()
+                .filter(size -> size >= count)
+                .next()
+                .then();
+    }
+
+    /**
+     * Начинает загрузку, если список не загружен и загрузка еще не выполняется
+     */
+    synchronized Sinks.Many<Integer> start() {
+        if (currentLoad != null) {
+            return currentLoad;
+        }
+        Sinks.Many<Integer> progress = Sinks.many().replay().latest();
+        if (fullyLoaded) {
+            progress.tryEmitComplete();
+            return progress;
+        }
+        currentLoad = progress;
+        progress.tryEmitNext(index.size());
+        log.debug("Loading {} chat list by {} chats", name, chunkSize);
+        loadNext(progress, System.nanoTime());
+        return progress;
+    }
+
+    boolean isFullyLoaded() {
+        return fullyLoaded;
+    }
+
+    private void loadNext(Sinks.Many<Integer> progress, long startNanos) {
+        loadChats.apply(chunkSize).subscribe(
+                ok -> {
+                },
+                error -> {
+                    if (error instanceof Client.TdlibException tdlibError && tdlibError.error.code == 404) {
+                        // 404 - все чаты списка уже загружены
+                        Client.runAfterDispatchedEvents(() -> {
+                            fullyLoaded = true;
+                            log.info("Loaded {} chat list: {} chats in {} ms", name, index.size(),
+                                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+                            finish(progress);
+                            progress.tryEmitComplete();
+                        });
+                    } else {
+                        log.warn("Failed to load {} chat list: {}", name, error.getMessage());
+                        finish(progress);
+                        progress.tryEmitError(error);
+                    }
+                },
+                () -> Client.runAfterDispatchedEvents(() -> {
+                    progress.tryEmitNext(index.size());
+                    loadNext(progress, startNanos);
+                }));
+    }
+
+    private synchronized void finish(Sinks.Many<Integer> progress) {
+        if (currentLoad == progress) {
+            currentLoad = null;
+        }
+    }
+}
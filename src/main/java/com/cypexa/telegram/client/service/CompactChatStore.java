@@ -0,0 +1,425 @@
+package com.cypexa.telegram.client.service;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.util.Arrays;
+
+/**
+ * Компактное хранилище чатов. Вместо графа объектов TdApi.Chat (фото, права, настройки уведомлений,
+ * полное последнее сообщение) хранятся только поля, которые попадают в ChatResponseDto: название, тип,
+ * дата и текст последнего сообщения, счетчики непрочитанных, а также позиции чата для индексов списков.
+ * <p>
+ * Поля хранятся в колонках-массивах сегментов; id чата - примитивный ключ открытой адресации, указывающий
+ * на строку колонок, поэтому ни поиск, ни добавление чата не упаковывают ключ. Чаты TDLib не удаляются,
+ * поэтому строки только добавляются. С keepFullObjects сегмент дополнительно хранит сами объекты TdApi.Chat
+ * и обновляет в них те же поля.
+ * <p>
+ * Сегмент - блокировка для чатов, которые в него попадают: {@link #lock(long)} возвращает ее для изменений
+ * чата, которые должны быть атомарны вместе с индексами списков.
+ */
+final class CompactChatStore {
+
+    private static final int SEGMENT_BITS = 6;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int INITIAL_ROWS = 32;
+    private static final TdApi.ChatPosition[] NO_POSITIONS = new TdApi.ChatPosition[0];
+
+    // Оценка размеров объектов для 64-битной JVM со сжатыми ссылками
+    private static final int REFERENCE_BYTES = 4;
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int STRING_BYTES = 24;
+    private static final int CHAT_POSITION_BYTES = 24;
+    private static final int CHAT_LIST_BYTES = 16;
+
+    private static final String[] TYPE_NAMES = {"unknown", "private", "group", "supergroup", "channel", "secret"};
+    private static final byte TYPE_UNKNOWN = 0;
+    private static final byte TYPE_PRIVATE = 1;
+    private static final byte TYPE_GROUP = 2;
+    private static final byte TYPE_SUPERGROUP = 3;
+    private static final byte TYPE_CHANNEL = 4;
+    private static final byte TYPE_SECRET = 5;
+
+    private final boolean keepFullObjects;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    CompactChatStore(boolean keepFullObjects) {
+        this.keepFullObjects = keepFullObjects;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(keepFullObjects);
+        }
+    }
+
+    /**
+     * Блокировка чата; методы хранилища берут ее сами, внешняя блокировка нужна только
+     * для нескольких изменений подряд
+     */
+    Object lock(long chatId) {
+        return segment(chatId);
+    }
+
+    /**
+     * Добавляет чат или заменяет его поля. Позиции не изменяются: они задаются {@link #setPositions},
+     * чтобы вызывающий мог обновить индексы списков
+     */
+    void put(TdApi.Chat chat) {
+        Segment segment = segment(chat.id);
+        synchronized (segment) {
+            int row = segment.find(chat.id);
+            if (row < 0) {
+                row = segment.insert(chat.id);
+            }
+            segment.set(row, chat);
+        }
+    }
+
+    /**
+     * Добавляет чат, если его нет, вместе с позициями (без индексов списков)
+     */
+    void putIfAbsent(TdApi.Chat chat) {
+        Segment segment = segment(chat.id);
+        synchronized (segment) {
+            if (segment.find(chat.id) < 0) {
+                TdApi.ChatPosition[] chatPositions = chat.positions == null ? NO_POSITIONS : chat.positions;
+                int row = segment.insert(chat.id);
+                segment.positions[row] = chatPositions;
+                segment.set(row, chat);
+            }
+        }
+    }
+
+    /**
+     * Поля чата для ответа или null, если чата нет
+     */
+    ChatSummary get(long chatId) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            if (row < 0) {
+                return null;
+            }
+            return new ChatSummary(chatId, segment.titles[row], TYPE_NAMES[segment.types[row]],
+                    segment.lastMessageDates[row], segment.lastMessageTexts[row],
+                    segment.unreadCounts[row], segment.unreadMentionCounts[row]);
+        }
+    }
+
+    /**
+     * Полный объект чата или null, если чата нет или полные объекты не хранятся.
+     * Изменять объект можно только под {@link #lock(long)}
+     */
+    TdApi.Chat getChat(long chatId) {
+        if (!keepFullObjects) {
+            return null;
+        }
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            return row < 0 ? null : segment.fullChats[row];
+        }
+    }
+
+    /**
+     * Позиции чата в списках или null, если чата нет
+     */
+    TdApi.ChatPosition[] getPositions(long chatId) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            return row < 0 ? null : segment.positions[row];
+        }
+    }
+
+    boolean setPositions(long chatId, TdApi.ChatPosition[] positions) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            if (row < 0) {
+                return false;
+            }
+            segment.positions[row] = positions;
+            if (segment.fullChats != null) {
+                segment.fullChats[row].positions = positions;
+            }
+            return true;
+        }
+    }
+
+    boolean setTitle(long chatId, String title) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            if (row < 0) {
+                return false;
+            }
+            segment.titles[row] = title;
+            if (segment.fullChats != null) {
+                segment.fullChats[row].title = title;
+            }
+            return true;
+        }
+    }
+
+    boolean setLastMessage(long chatId, TdApi.Message lastMessage) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            if (row < 0) {
+                return false;
+            }
+            segment.setLastMessage(row, lastMessage);
+            if (segment.fullChats != null) {
+                segment.fullChats[row].lastMessage = lastMessage;
+            }
+            return true;
+        }
+    }
+
+    boolean setUnreadCount(long chatId, int unreadCount) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            if (row < 0) {
+                return false;
+            }
+            segment.unreadCounts[row] = unreadCount;
+            if (segment.fullChats != null) {
+                segment.fullChats[row].unreadCount = unreadCount;
+            }
+            return true;
+        }
+    }
+
+    boolean setUnreadMentionCount(long chatId, int unreadMentionCount) {
+        Segment segment = segment(chatId);
+        synchronized (segment) {
+            int row = segment.find(chatId);
+            if (row < 0) {
+                return false;
+            }
+            segment.unreadMentionCounts[row] = unreadMentionCount;
+            if (segment.fullChats != null) {
+                segment.fullChats[row].unreadMentionCount = unreadMentionCount;
+            }
+            return true;
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    boolean isKeepFullObjects() {
+        return keepFullObjects;
+    }
+
+    /**
+     * Оценка занимаемой памяти: таблицы ключей, колонки, строки и позиции. Полные объекты TdApi.Chat
+     * (keepFullObjects) не учитываются. Обходит все чаты, поэтому предназначена для мониторинга
+     */
+    Footprint footprint() {
+        int chats = 0;
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                chats += segment.size;
+                bytes += segment.footprint();
+            }
+        }
+        return new Footprint(chats, bytes);
+    }
+
+    /**
+     * Поля чата для ответа из объекта TDLib (чат, полученный запросом GetChat)
+     */
+    static ChatSummary summarize(TdApi.Chat chat) {
+        TdApi.Message lastMessage = chat.lastMessage;
+        return new ChatSummary(chat.id, chat.title, TYPE_NAMES[getType(chat.type)],
+                lastMessage == null ? 0 : lastMessage.date, lastMessage == null ? null : getMessageText(lastMessage),
+                chat.unreadCount, chat.unreadMentionCount);
+    }
+
+    static String getMessageText(TdApi.Message message) {
+        if (message.content instanceof TdApi.MessageText textMessage) {
+            return textMessage.text.text;
+        }
+        return ""; // Для других типов сообщений
+    }
+
+    private static byte getType(TdApi.ChatType type) {
+        if (type instanceof TdApi.ChatTypePrivate) {
+            return TYPE_PRIVATE;
+        } else if (type instanceof TdApi.ChatTypeBasicGroup) {
+            return TYPE_GROUP;
+        } else if (type instanceof TdApi.ChatTypeSupergroup supergroup) {
+            return supergroup.isChannel ? TYPE_CHANNEL : TYPE_SUPERGROUP;
+        } else if (type instanceof TdApi.ChatTypeSecret) {
+            return TYPE_SECRET;
+        }
+        return TYPE_UNKNOWN;
+    }
+
+    private Segment segment(long chatId) {
+        return segments[(int) (mix(chatId) >>> (64 - SEGMENT_BITS))];
+    }
+
+    private static long mix(long key) {
+        return key * 0x9E3779B97F4A7C15L;
+    }
+
+    private static int hash(long key) {
+        long h = mix(key);
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Поля чата, которые попадают в ответ; lastMessageText null - последнего сообщения нет
+     */
+    record ChatSummary(long id, String title, String type, int lastMessageDate, String lastMessageText,
+                       int unreadCount, int unreadMentionCount) {
+    }
+
+    record Footprint(int chats, long bytes) {
+
+        long bytesPerChat() {
+            return chats == 0 ? 0 : bytes / chats;
+        }
+    }
+
+    private static final class Segment {
+        // Таблица открытой адресации id чата -> строка колонок; 0 - свободная ячейка (id чата не бывает 0)
+        private long[] keys = new long[2 * INITIAL_ROWS];
+        private int[] rows = new int[2 * INITIAL_ROWS];
+        private int size;
+
+        // Колонки, индексированные строкой
+        private String[] titles = new String[INITIAL_ROWS];
+        private byte[] types = new byte[INITIAL_ROWS];
+        private int[] lastMessageDates = new int[INITIAL_ROWS];
+        private String[] lastMessageTexts = new String[INITIAL_ROWS];
+        private int[] unreadCounts = new int[INITIAL_ROWS];
+        private int[] unreadMentionCounts = new int[INITIAL_ROWS];
+        private TdApi.ChatPosition[][] positions = new TdApi.ChatPosition[INITIAL_ROWS][];
+        private TdApi.Chat[] fullChats;
+
+        Segment(boolean keepFullObjects) {
+            if (keepFullObjects) {
+                fullChats = new TdApi.Chat[INITIAL_ROWS];
+            }
+        }
+
+        int find(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == 0) {
+                    return -1;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return rows[slot];
+        }
+
+        int insert(long key) {
+            if (size == titles.length) {
+                growColumns();
+            }
+            if (2 * (size + 1) > keys.length) {
+                growTable();
+            }
+            int row = size++;
+            insert(keys, rows, key, row);
+            positions[row] = NO_POSITIONS;
+            return row;
+        }
+
+        void set(int row, TdApi.Chat chat) {
+            titles[row] = chat.title;
+            types[row] = getType(chat.type);
+            setLastMessage(row, chat.lastMessage);
+            unreadCounts[row] = chat.unreadCount;
+            unreadMentionCounts[row] = chat.unreadMentionCount;
+            if (fullChats != null) {
+                chat.positions = positions[row];
+                fullChats[row] = chat;
+            }
+        }
+
+        void setLastMessage(int row, TdApi.Message lastMessage) {
+            lastMessageDates[row] = lastMessage == null ? 0 : lastMessage.date;
+            lastMessageTexts[row] = lastMessage == null ? null : getMessageText(lastMessage);
+        }
+
+        long footprint() {
+            long bytes = ARRAY_HEADER_BYTES + (long) keys.length * Long.BYTES
+                    + ARRAY_HEADER_BYTES + (long) rows.length * Integer.BYTES;
+            int capacity = titles.length;
+            int referenceColumns = fullChats == null ? 3 : 4;
+            bytes += 7L * ARRAY_HEADER_BYTES + (long) capacity * (referenceColumns * REFERENCE_BYTES
+                    + Byte.BYTES + 3 * Integer.BYTES);
+            for (int row = 0; row < size; row++) {
+                bytes += stringBytes(titles[row]) + stringBytes(lastMessageTexts[row]);
+                TdApi.ChatPosition[] chatPositions = positions[row];
+                if (chatPositions != NO_POSITIONS) {
+                    // Позиция и ее список; NO_POSITIONS общий для всех чатов
+                    bytes += ARRAY_HEADER_BYTES
+                            + (long) chatPositions.length * (REFERENCE_BYTES + CHAT_POSITION_BYTES + CHAT_LIST_BYTES);
+                }
+            }
+            return bytes;
+        }
+
+        private static long stringBytes(String value) {
+            if (value == null) {
+                return 0;
+            }
+            boolean latin1 = true;
+            for (int i = 0; i < value.length() && latin1; i++) {
+                latin1 = value.charAt(i) < 256;
+            }
+            long arrayBytes = ARRAY_HEADER_BYTES + (long) value.length() * (latin1 ? 1 : 2);
+            return STRING_BYTES + ((arrayBytes + 7) & ~7L);
+        }
+
+        private void growColumns() {
+            int capacity = titles.length * 2;
+            titles = Arrays.copyOf(titles, capacity);
+            types = Arrays.copyOf(types, capacity);
+            lastMessageDates = Arrays.copyOf(lastMessageDates, capacity);
+            lastMessageTexts = Arrays.copyOf(lastMessageTexts, capacity);
+            unreadCounts = Arrays.copyOf(unreadCounts, capacity);
+            unreadMentionCounts = Arrays.copyOf(unreadMentionCounts, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            if (fullChats != null) {
+                fullChats = Arrays.copyOf(fullChats, capacity);
+            }
+        }
+
+        private void growTable() {
+            long[] newKeys = new long[keys.length * 2];
+            int[] newRows = new int[rows.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    insert(newKeys, newRows, keys[i], rows[i]);
+                }
+            }
+            keys = newKeys;
+            rows = newRows;
+        }
+
+        private static void insert(long[] keys, int[] rows, long key, int row) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            rows[slot] = row;
+        }
+    }
+}
@@ -1,14 +1,15 @@
 package com.cypexa.telegram.client.service;
 
 import com.cypexa.telegram.client.handlers.auth.request.AuthorizationRequestHandler;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
 import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import com.cypexa.telegram.client.update.TelegramUpdateListener;
 import lombok.extern.slf4j.Slf4j;
 import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.MonoSink;
 
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -20,6 +21,7 @@ public class TelegramAuthService {
 
     private final Client telegramClient;
     private final TelegramClientProperties properties;
+    private final TelegramMetrics metrics;
 
     private final Lock authorizationLock = new ReentrantLock();
     private final Condition gotAuthorization = authorizationLock.newCondition();
@@ -28,13 +30,19 @@ public class TelegramAuthService {
     private volatile boolean haveAuthorization = false;
 
     @Autowired
-    public TelegramAuthService(Client telegramClient, TelegramClientProperties properties) {
+    public TelegramAuthService(Client telegramClient, TelegramClientProperties properties, TelegramMetrics metrics) {
         this.telegramClient = telegramClient;
         this.properties = properties;
+        this.metrics = metrics;
+    }
+
+    @TelegramUpdateListener
+    public void onAuthorizationStateUpdate(TdApi.UpdateAuthorizationState update) {
+        handleAuthorizationUpdate(update.authorizationState);
     }
 
     /**
-     * Обрабатывает обновления состояния авторизации (вызывается из TelegramUpdateHandler)
+     * Обрабатывает обновления состояния авторизации
      */
     public void handleAuthorizationUpdate(TdApi.AuthorizationState authorizationState) {
         if (authorizationState != null) {
@@ -87,19 +95,17 @@ public class TelegramAuthService {
     }
 
     public Mono<String> sendPhoneNumber(String phoneNumber) {
-        return Mono.<String>create(sink -> {
+        return Mono.defer(() -> {
                     if (authorizationState == null) {
-                        sink.error(new RuntimeException("Client not initialized"));
-                        return;
+                        return Mono.<String>error(new RuntimeException("Client not initialized"));
                     }
 
                     if (!(authorizationState instanceof TdApi.AuthorizationStateWaitPhoneNumber)) {
-                        sink.error(new RuntimeException("Current state is not waiting for phone number. Current state: " +
+                        return Mono.<String>error(new RuntimeException("Current state is not waiting for phone number. Current state: " +
                                 authorizationState.getClass().getSimpleName()));
-                        return;
                     }
 
-                    telegramClient.send(new TdApi.SetAuthenticationPhoneNumber(phoneNumber, null), object -> handleResult(sink, object, "Phone number sent successfully", "Error sending phone number: "));
+                    return handleResult(new TdApi.SetAuthenticationPhoneNumber(phoneNumber, null), "Phone number sent successfully", "Error sending phone number: ");
                 })
                 .doOnSubscribe(subscription -> log.info("Sending phone number: {}", phoneNumber))
                 .doOnSuccess(result -> log.info("Phone number sent successfully"))
@@ -107,33 +113,28 @@ public class TelegramAuthService {
     }
 
     public Mono<String> sendAuthCode(String code) {
-        return Mono.<String>create(sink -> {
+        return Mono.defer(() -> {
                     if (authorizationState == null) {
-                        sink.error(new RuntimeException("Client not initialized"));
-                        return;
+                        return Mono.<String>error(new RuntimeException("Client not initialized"));
                     }
 
                     if (!(authorizationState instanceof TdApi.AuthorizationStateWaitCode)) {
-                        sink.error(new RuntimeException("Current state is not waiting for code. Current state: " +
+                        return Mono.<String>error(new RuntimeException("Current state is not waiting for code. Current state: " +
                                 authorizationState.getClass().getSimpleName()));
-                        return;
                     }
 
-                    telegramClient.send(new TdApi.CheckAuthenticationCode(code), object -> handleResult(sink, object, "Authentication code verified successfully", "Error verifying code: "));
+                    return handleResult(new TdApi.CheckAuthenticationCode(code), "Authentication code verified successfully", "Error verifying code: ");
                 })
                 .doOnSubscribe(subscription -> log.info("Verifying authentication code"))
                 .doOnSuccess(result -> log.info("Authentication code verified successfully"))
                 .doOnError(error -> log.error("Error verifying auth code", error));
     }
 
-    private void handleResult(MonoSink<String> sink, TdApi.Object object, String successMessage, String errorPrefix) {
-        if (object instanceof TdApi.Ok) {
-            sink.success(successMessage);
-        } else if (object instanceof TdApi.Error error) {
-            sink.error(new RuntimeException(errorPrefix + error.message));
-        } else {
-            sink.error(new RuntimeException("Unexpected response type: " + object.getClass().getSimpleName()));
-        }
+    private Mono<String> handleResult(TdApi.Function<TdApi.Ok> request, String successMessage, String errorPrefix) {
+        return metrics.timeQuery(request,
+                        BaseTelegramService.sendQuery(request, () -> telegramClient.sendAsync(request)))
+                .thenReturn(successMessage)
+                .onErrorMap(Client.TdlibException.class, e -> new RuntimeException(errorPrefix + e.error.message));
     }
 
     public String getCurrentAuthState() {
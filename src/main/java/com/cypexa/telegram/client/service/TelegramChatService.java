@@ -1,9 +1,17 @@
 package com.cypexa.telegram.client.service;
 
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
 import com.cypexa.telegram.client.dto.ChatListResponseDto;
 import com.cypexa.telegram.client.dto.ChatResponseDto;
 import com.cypexa.telegram.client.dto.MessageResponseDto;
 import com.cypexa.telegram.client.dto.SendMessageRequestDto;
+import com.cypexa.telegram.client.jfr.ChatListUpdateEvent;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
+import com.cypexa.telegram.client.limiter.RequestPriority;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.observation.TelegramObservations;
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import com.cypexa.telegram.client.update.TelegramUpdateListener;
 import lombok.extern.slf4j.Slf4j;
 import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
@@ -12,9 +20,12 @@ import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.NavigableSet;
-import java.util.TreeSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 
@@ -23,87 +34,104 @@ import java.util.concurrent.ConcurrentMap;
 public class TelegramChatService extends BaseTelegramService {
 
     // Локальное хранилище чатов
-    private final ConcurrentMap<Long, TdApi.Chat> chats = new ConcurrentHashMap<>();
-    private final NavigableSet<OrderedChat> mainChatList = new TreeSet<>();
-    private volatile boolean haveFullMainChatList = false;
+    private final CompactChatStore chats;
+    // Упорядоченные индексы списков чатов (основной, архив, папки) по позициям из updates
+    private final ConcurrentMap<ChatListKey, ChatListState> chatLists = new ConcurrentHashMap<>();
+    private final ChatListState mainChatList;
+    private final int chatListChunkSize;
+    private final boolean preloadChatList;
     
     @Autowired
-    public TelegramChatService(Client telegramClient, TelegramAuthService authService) {
-        super(telegramClient, authService);
+    public TelegramChatService(Client telegramClient, TelegramAuthService authService,
+                               AdaptiveConcurrencyLimiter requestLimiter, QueryCoalescer queryCoalescer,
+                               TelegramMetrics metrics, TelegramObservations observations,
+                               TelegramClientProperties properties) {
+        super(telegramClient, authService, requestLimiter, queryCoalescer, metrics, observations);
+        this.chats = new CompactChatStore(properties.getChatStore().getKeepFullObjects());
+        this.chatListChunkSize = properties.getChatList().getChunkSize();
+        this.preloadChatList = properties.getChatList().getPreload();
+        this.mainChatList = getChatList(ChatListKey.MAIN);
+        getChatList(ChatListKey.ARCHIVE);
     }
 
     public Mono<ChatListResponseDto> getChats(int limit) {
-        return executeWithAuth("getChats", sink -> getMainChatList(limit, sink));
+        return getChats("main", limit, null, false);
     }
 
-    private void getMainChatList(int limit, reactor.core.publisher.MonoSink<ChatListResponseDto> sink) {
-        synchronized (mainChatList) {
-            if (!haveFullMainChatList && limit > mainChatList.size()) {
-                // Отправляем LoadChats запрос если есть неизвестные чаты
-                sendTelegramRequest(
-                        new TdApi.LoadChats(new TdApi.ChatListMain(), limit - mainChatList.size()),
-                        sink,
-                        (result, s) -> {
-                            if (result.getConstructor() == TdApi.Ok.CONSTRUCTOR) {// Чаты уже получены через updates, повторяем запрос
-                                getMainChatList(limit, sink);
-                            } else {
-                                throw new RuntimeException("Wrong response from TDLib: " + result);
-                        }
-                    }
-                );
-                return;
+    /**
+     * Страница списка чатов (main, archive, folder:&lt;id&gt;) после курсора nextCursor предыдущей страницы
+     * (null - первая страница). Если чатов в локальном хранилище не хватает, запрос ждет фоновой загрузки списка;
+     * с partial = true сразу возвращается то, что уже загружено
+     */
+    public Mono<ChatListResponseDto> getChats(String chatList, int limit, String cursor, boolean partial) {
+        return executeWithAuth("getChats", () -> getChatListPage(findChatList(ChatListKey.parse(chatList)), limit,
+                cursor == null || cursor.isEmpty() ? null : ChatListCursor.decode(cursor), partial));
+    }
+
+    private Mono<ChatListResponseDto> getChatListPage(ChatListState chatList, int limit, ChatListCursor cursor,
+                                                      boolean partial) {
+        // Индекс читается без блокировки, поля каждого чата копируются из хранилища под его блокировкой
+        ChatListIndex.Page page = chatList.index.page(cursor, limit);
+        int count = page.chatIds().length;
+        if (!chatList.loader.isFullyLoaded() && count < limit) {
+            if (partial) {
+                chatList.loader.start();
+            } else {
+                // Ждем, пока фоновая загрузка добавит недостающие чаты, и повторяем запрос.
+                // Если чатов не прибавилось, повтор ничего не изменит - возвращаем то, что есть
+                int size = chatList.index.size();
+                int target = (int) Math.min(Integer.MAX_VALUE, (long) size + limit - count);
+                return chatList.loader.ensureLoaded(target)
+                        .then(Mono.defer(() -> getChatListPage(chatList, limit, cursor,
+                                !chatList.loader.isFullyLoaded() && chatList.index.size() <= size)));
             }
+        }
 
-            // Возвращаем чаты из локального хранилища
-            List<ChatResponseDto> chatList = new ArrayList<>();
-            var iter = mainChatList.iterator();
-            int count = Math.min(limit, mainChatList.size());
-            
-            for (int i = 0; i < count; i++) {
-                long chatId = iter.next().chatId;
-                TdApi.Chat chat = chats.get(chatId);
-                if (chat != null) {
-                    synchronized (chat) {
-                        chatList.add(convertToDto(chat));
-                    }
-                }
+        // Возвращаем чаты из локального хранилища
+        List<ChatResponseDto> chatDtos = new ArrayList<>(count);
+        for (long chatId : page.chatIds()) {
+            CompactChatStore.ChatSummary chat = chats.get(chatId);
+            if (chat != null) {
+                chatDtos.add(convertToDto(chat));
             }
-            
-            sink.success(ChatListResponseDto.success(chatList, mainChatList.size()));
         }
+
+        // Следующая страница есть, если после последнего чата есть чаты или их еще можно загрузить;
+        // неполная страница (partial) продолжается с того же места
+        ChatListCursor next = page.last() != null ? page.last() : cursor;
+        boolean hasNext = next != null && (page.hasMore() || !chatList.loader.isFullyLoaded());
+        return Mono.just(ChatListResponseDto.success(chatDtos, chatList.index.size(),
+                hasNext ? next.encode() : null));
     }
 
     public Mono<ChatResponseDto> getChatById(long chatId) {
-        return executeWithAuth("getChatById", sink -> {
-            // Сначала проверяем локальное хранилище
-            TdApi.Chat localChat = chats.get(chatId);
-            if (localChat != null) {
-                synchronized (localChat) {
-                    sink.success(convertToDto(localChat));
-                    return;
+        return executeWithAuth("getChatById", () -> {
+            // Сначала проверяем локальное хранилище; полный объект (keep-full-objects) дает больше полей
+            if (chats.isKeepFullObjects()) {
+                synchronized (chats.lock(chatId)) {
+                    TdApi.Chat fullChat = chats.getChat(chatId);
+                    if (fullChat != null) {
+                        return Mono.just(convertToDto(fullChat));
+                    }
                 }
             }
+            CompactChatStore.ChatSummary localChat = chats.get(chatId);
+            if (localChat != null) {
+                return Mono.just(convertToDto(localChat));
+            }
 
             // Если нет в локальном хранилище, запрашиваем
-            sendTelegramRequest(
-                    new TdApi.GetChat(chatId),
-                    sink,
-                    (result, s) -> {
-                        if (result instanceof TdApi.Chat chat) {
-                            // Сохраняем в локальное хранилище
-                            chats.put(chat.id, chat);
-                            s.success(convertToDto(chat));
-                        } else {
-                            throw new RuntimeException("Unexpected response type: " + result.getClass()
-                                    .getSimpleName());
-                        }
-                    }
-            );
+            return sendTelegramRequest(new TdApi.GetChat(chatId))
+                    .map(chat -> {
+                        // Сохраняем в локальное хранилище
+                        chats.putIfAbsent(chat);
+                        return convertToDto(chat);
+                    });
         });
     }
 
     public Mono<MessageResponseDto> sendMessage(SendMessageRequestDto request) {
-        return executeWithAuth("sendMessage", sink -> {
+        return executeWithAuth("sendMessage", () -> {
             // Создаем текстовое сообщение
             TdApi.InputMessageText inputMessageText = new TdApi.InputMessageText();
             inputMessageText.text = new TdApi.FormattedText();
@@ -130,176 +158,234 @@ public class TelegramChatService extends BaseTelegramService {
                 inputMessageText
             );
 
-            sendTelegramRequest(sendMessage, sink, (result, s) -> {
-                if (result instanceof TdApi.Message message) {
-                    MessageResponseDto response = MessageResponseDto.success(
+            return sendTelegramRequest(sendMessage, RequestPriority.INTERACTIVE)
+                    .map(message -> MessageResponseDto.success(
                         message.id,
                         message.chatId,
-                        extractMessageText(message),
+                        CompactChatStore.getMessageText(message),
                         message.date
-                    );
-                    s.success(response);
-                } else {
-                    throw new RuntimeException("Unexpected response type: " + result.getClass().getSimpleName());
-                }
-            });
+                    ));
         });
     }
 
-    // Метод для обработки updates (вызывается из TelegramUpdateHandler)
-    public void handleUpdate(TdApi.Object update) {
-        switch (update.getConstructor()) {
-            case TdApi.UpdateNewChat.CONSTRUCTOR: {
-                TdApi.UpdateNewChat updateNewChat = (TdApi.UpdateNewChat) update;
-                TdApi.Chat chat = updateNewChat.chat;
-                synchronized (chat) {
-                    chats.put(chat.id, chat);
-
-                    TdApi.ChatPosition[] positions = chat.positions;
-                    chat.positions = new TdApi.ChatPosition[0];
-                    setChatPositions(chat, positions);
-                }
-                break;
-            }
-            case TdApi.UpdateChatTitle.CONSTRUCTOR: {
-                TdApi.UpdateChatTitle updateChat = (TdApi.UpdateChatTitle) update;
-                TdApi.Chat chat = chats.get(updateChat.chatId);
-                if (chat != null) {
-                    synchronized (chat) {
-                        chat.title = updateChat.title;
-                    }
-                }
-                break;
+    // Обработчики updates (вызываются из TelegramUpdateHandler через UpdateListenerRegistry)
+    @TelegramUpdateListener
+    public void onAuthorizationState(TdApi.UpdateAuthorizationState update) {
+        if (preloadChatList && update.authorizationState.getConstructor() == TdApi.AuthorizationStateReady.CONSTRUCTOR) {
+            mainChatList.loader.start();
+        }
+    }
+
+    @TelegramUpdateListener
+    public void onNewChat(TdApi.UpdateNewChat updateNewChat) {
+        TdApi.Chat chat = updateNewChat.chat;
+        synchronized (chats.lock(chat.id)) {
+            TdApi.ChatPosition[] positions = chat.positions;
+            chats.put(chat);
+            setChatPositions(chat.id, positions);
+        }
+    }
+
+    @TelegramUpdateListener
+    public void onChatTitle(TdApi.UpdateChatTitle updateChat) {
+        chats.setTitle(updateChat.chatId, updateChat.title);
+    }
+
+    @TelegramUpdateListener
+    public void onChatLastMessage(TdApi.UpdateChatLastMessage updateChat) {
+        synchronized (chats.lock(updateChat.chatId)) {
+            if (chats.setLastMessage(updateChat.chatId, updateChat.lastMessage)) {
+                setChatPositions(updateChat.chatId, updateChat.positions);
             }
-            case TdApi.UpdateChatLastMessage.CONSTRUCTOR: {
-                TdApi.UpdateChatLastMessage updateChat = (TdApi.UpdateChatLastMessage) update;
-                TdApi.Chat chat = chats.get(updateChat.chatId);
-                if (chat != null) {
-                    synchronized (chat) {
-                        chat.lastMessage = updateChat.lastMessage;
-                        setChatPositions(chat, updateChat.positions);
+        }
+    }
+
+    @TelegramUpdateListener
+    public void onChatPosition(TdApi.UpdateChatPosition updateChat) {
+        ChatListKey chatList = ChatListKey.of(updateChat.position.list);
+        synchronized (chats.lock(updateChat.chatId)) {
+            TdApi.ChatPosition[] positions = chats.getPositions(updateChat.chatId);
+            if (positions != null) {
+                int i;
+                for (i = 0; i < positions.length; i++) {
+                    if (ChatListKey.of(positions[i].list).equals(chatList)) {
+                        break;
                     }
                 }
-                break;
-            }
-            case TdApi.UpdateChatPosition.CONSTRUCTOR: {
-                TdApi.UpdateChatPosition updateChat = (TdApi.UpdateChatPosition) update;
-                if (updateChat.position.list.getConstructor() != TdApi.ChatListMain.CONSTRUCTOR) {
-                    break;
+                TdApi.ChatPosition[] new_positions = new TdApi.ChatPosition[positions.length + (updateChat.position.order == 0 ? 0 : 1) - (i < positions.length ? 1 : 0)];
+                int pos = 0;
+                if (updateChat.position.order != 0) {
+                    new_positions[pos++] = updateChat.position;
                 }
-
-                TdApi.Chat chat = chats.get(updateChat.chatId);
-                if (chat != null) {
-                    synchronized (chat) {
-                        int i;
-                        for (i = 0; i < chat.positions.length; i++) {
-                            if (chat.positions[i].list.getConstructor() == TdApi.ChatListMain.CONSTRUCTOR) {
-                                break;
-                            }
-                        }
-                        TdApi.ChatPosition[] new_positions = new TdApi.ChatPosition[chat.positions.length + (updateChat.position.order == 0 ? 0 : 1) - (i < chat.positions.length ? 1 : 0)];
-                        int pos = 0;
-                        if (updateChat.position.order != 0) {
-                            new_positions[pos++] = updateChat.position;
-                        }
-                        for (int j = 0; j < chat.positions.length; j++) {
-                            if (j != i) {
-                                new_positions[pos++] = chat.positions[j];
-                            }
-                        }
-
-                        setChatPositions(chat, new_positions);
+                for (int j = 0; j < positions.length; j++) {
+                    if (j != i) {
+                        new_positions[pos++] = positions[j];
                     }
                 }
-                break;
+
+                setChatPositions(updateChat.chatId, new_positions);
             }
         }
     }
 
-    private void setChatPositions(TdApi.Chat chat, TdApi.ChatPosition[] positions) {
-        synchronized (mainChatList) {
-            synchronized (chat) {
-                for (TdApi.ChatPosition position : chat.positions) {
-                    if (position.list.getConstructor() == TdApi.ChatListMain.CONSTRUCTOR) {
-                        mainChatList.remove(new OrderedChat(chat.id, position));
-                    }
-                }
+    @TelegramUpdateListener
+    public void onChatFolders(TdApi.UpdateChatFolders updateChatFolders) {
+        // Состояние папок создается только по данным TDLib; удаленные папки забываются
+        Set<ChatListKey> folders = new HashSet<>();
+        for (TdApi.ChatFolderInfo folder : updateChatFolders.chatFolders) {
+            ChatListKey key = ChatListKey.of(new TdApi.ChatListFolder(folder.id));
+            folders.add(key);
+            getChatList(key);
+        }
+        chatLists.keySet().removeIf(key -> key.constructor() == TdApi.ChatListFolder.CONSTRUCTOR
+                && !folders.contains(key));
+    }
 
-                chat.positions = positions;
+    @TelegramUpdateListener
+    public void onChatReadInbox(TdApi.UpdateChatReadInbox updateChat) {
+        chats.setUnreadCount(updateChat.chatId, updateChat.unreadCount);
+    }
 
-                for (TdApi.ChatPosition position : chat.positions) {
-                    if (position.list.getConstructor() == TdApi.ChatListMain.CONSTRUCTOR) {
-                        mainChatList.add(new OrderedChat(chat.id, position));
-                    }
+    @TelegramUpdateListener
+    public void onChatUnreadMentionCount(TdApi.UpdateChatUnreadMentionCount updateChat) {
+        chats.setUnreadMentionCount(updateChat.chatId, updateChat.unreadMentionCount);
+    }
+
+    @TelegramUpdateListener
+    public void onMessageMentionRead(TdApi.UpdateMessageMentionRead updateMessage) {
+        chats.setUnreadMentionCount(updateMessage.chatId, updateMessage.unreadMentionCount);
+    }
+
+    // Позиции чата изменяются только под его блокировкой, индекс списка блокировки не требует
+    private void setChatPositions(long chatId, TdApi.ChatPosition[] positions) {
+        ChatListUpdateEvent event = new ChatListUpdateEvent();
+        event.begin();
+        synchronized (chats.lock(chatId)) {
+            TdApi.ChatPosition[] oldPositions = chats.getPositions(chatId);
+            if (oldPositions == null) {
+                return;
+            }
+            for (TdApi.ChatPosition position : oldPositions) {
+                // Список мог быть удален вместе с папкой - не создаем его заново
+                ChatListState chatList = chatLists.get(ChatListKey.of(position.list));
+                if (chatList != null) {
+                    chatList.index.remove(chatId, position.order);
                 }
             }
+
+            chats.setPositions(chatId, positions);
+
+            for (TdApi.ChatPosition position : positions) {
+                getChatList(ChatListKey.of(position.list)).index.add(chatId, position.order);
+            }
+        }
+        event.end();
+        if (event.shouldCommit()) {
+            event.chatId = chatId;
+            event.chatListSize = mainChatList.index.size();
+            event.commit();
         }
     }
 
-    private ChatResponseDto convertToDto(TdApi.Chat chat) {
-        ChatResponseDto dto = new ChatResponseDto();
-        dto.setId(chat.id);
-        dto.setTitle(chat.title);
-        dto.setType(getChatType(chat.type));
-        
-        if (chat.lastMessage != null) {
-            dto.setLastMessageDate(chat.lastMessage.date);
-            dto.setLastMessageText(extractMessageText(chat.lastMessage));
-        }
-        
-        return dto;
+    /**
+     * Число чатов в локальном хранилище
+     */
+    public int getChatCount() {
+        return chats.size();
     }
 
-    private String getChatType(TdApi.ChatType type) {
-        if (type instanceof TdApi.ChatTypePrivate) {
-            return "private";
-        } else if (type instanceof TdApi.ChatTypeBasicGroup) {
-            return "group";
-        } else if (type instanceof TdApi.ChatTypeSupergroup supergroup) {
-            return supergroup.isChannel ? "channel" : "supergroup";
-        } else if (type instanceof TdApi.ChatTypeSecret) {
-            return "secret";
-        }
-        return "unknown";
+    /**
+     * Оценка памяти хранилища чатов (без полных объектов TdApi.Chat)
+     */
+    public Map<String, Object> getChatStoreFootprint() {
+        CompactChatStore.Footprint footprint = chats.footprint();
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("bytes", footprint.bytes());
+        details.put("bytesPerChat", footprint.bytesPerChat());
+        details.put("keepFullObjects", chats.isKeepFullObjects());
+        return details;
     }
 
-    private String extractMessageText(TdApi.Message message) {
-        if (message.content instanceof TdApi.MessageText textMessage) {
-            return textMessage.text.text;
-        }
-        return ""; // Для других типов сообщений
+    /**
+     * Число чатов в основном списке
+     */
+    public int getMainChatListSize() {
+        return mainChatList.index.size();
     }
 
-    // Вспомогательный класс для сортировки чатов
-    private static class OrderedChat implements Comparable<OrderedChat> {
-        final long chatId;
-        final TdApi.ChatPosition position;
+    /**
+     * Загружен ли основной список чатов полностью (LoadChats вернул 404)
+     */
+    public boolean isFullMainChatListLoaded() {
+        return mainChatList.loader.isFullyLoaded();
+    }
 
-        OrderedChat(long chatId, TdApi.ChatPosition position) {
-            this.chatId = chatId;
-            this.position = position;
+    /**
+     * Число чатов в каждом известном списке (main, archive, folder:&lt;id&gt;)
+     */
+    public Map<String, Integer> getChatListSizes() {
+        Map<String, Integer> sizes = new TreeMap<>();
+        chatLists.forEach((key, chatList) -> sizes.put(key.toString(), chatList.index.size()));
+        return sizes;
+    }
+
+    // Список из запроса: только известные TDLib списки, неизвестная папка - ошибка запроса
+    private ChatListState findChatList(ChatListKey key) {
+        ChatListState chatList = chatLists.get(key);
+        if (chatList == null) {
+            throw new IllegalArgumentException("Unknown chat list: " + key);
         }
+        return chatList;
+    }
 
-        @Override
-        public int compareTo(OrderedChat o) {
-            if (this.position.order != o.position.order) {
-                return o.position.order < this.position.order ? -1 : 1;
-            }
-            if (this.chatId != o.chatId) {
-                return o.chatId < this.chatId ? -1 : 1;
-            }
-            return 0;
+    // Список из обновления TDLib: создается при первом упоминании
+    private ChatListState getChatList(ChatListKey key) {
+        ChatListState chatList = chatLists.get(key);
+        if (chatList == null) {
+            chatList = chatLists.computeIfAbsent(key, this::newChatList);
         }
+        return chatList;
+    }
+
+    private ChatListState newChatList(ChatListKey key) {
+        ChatListIndex index = new ChatListIndex();
+        TdApi.ChatList list = key.toChatList();
+        ChatListLoader loader = new ChatListLoader(key.toString(), index,
+                limit -> sendTelegramRequest(new TdApi.LoadChats(list, limit), RequestPriority.BACKGROUND),
+                chatListChunkSize);
+        return new ChatListState(index, loader);
+    }
 
-        @Override
-        public boolean equals(Object obj) {
-            if (!(obj instanceof OrderedChat o)) return false;
-            return this.chatId == o.chatId && this.position.order == o.position.order;
+    // Полный объект: кроме полей компактной строки - фото и признаки канала и группы
+    ChatResponseDto convertToDto(TdApi.Chat chat) {
+        ChatResponseDto dto = convertToDto(CompactChatStore.summarize(chat));
+        dto.setChannel(chat.type instanceof TdApi.ChatTypeSupergroup supergroup && supergroup.isChannel);
+        dto.setGroup(chat.type instanceof TdApi.ChatTypeBasicGroup
+                || chat.type instanceof TdApi.ChatTypeSupergroup supergroup && !supergroup.isChannel);
+        if (chat.photo != null && chat.photo.small != null && chat.photo.small.local != null
+                && chat.photo.small.local.isDownloadingCompleted) {
+            dto.setPhotoUrl(chat.photo.small.local.path);
         }
+        return dto;
+    }
 
-        @Override
-        public int hashCode() {
-            return Long.hashCode(chatId) ^ Long.hashCode(position.order);
+    private ChatResponseDto convertToDto(CompactChatStore.ChatSummary chat) {
+        ChatResponseDto dto = new ChatResponseDto();
+        dto.setId(chat.id());
+        dto.setTitle(chat.title());
+        dto.setType(chat.type());
+        dto.setUnreadCount(chat.unreadCount());
+        dto.setUnreadMentionCount(chat.unreadMentionCount());
+        
+        if (chat.lastMessageText() != null) {
+            dto.setLastMessageDate(chat.lastMessageDate());
+            dto.setLastMessageText(chat.lastMessageText());
         }
+        
+        return dto;
+    }
+
+    // Индекс списка чатов и его загрузка
+    private record ChatListState(ChatListIndex index, ChatListLoader loader) {
     }
-} 
\ No newline at end of file
+}
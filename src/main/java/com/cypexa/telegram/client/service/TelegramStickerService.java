@@ -1,9 +1,14 @@
 package com.cypexa.telegram.client.service;
 
+import com.cypexa.telegram.client.coalescing.QueryCoalescer;
 import com.cypexa.telegram.client.dto.MessageResponseDto;
 import com.cypexa.telegram.client.dto.SendStickerRequestDto;
 import com.cypexa.telegram.client.dto.StickerResponseDto;
 import com.cypexa.telegram.client.dto.StickerSetResponseDto;
+import com.cypexa.telegram.client.limiter.AdaptiveConcurrencyLimiter;
+import com.cypexa.telegram.client.limiter.RequestPriority;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.observation.TelegramObservations;
 import lombok.extern.slf4j.Slf4j;
 import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
@@ -19,44 +24,34 @@ import java.util.List;
 public class TelegramStickerService extends BaseTelegramService {
     
     @Autowired
-    public TelegramStickerService(Client telegramClient, TelegramAuthService authService) {
-        super(telegramClient, authService);
+    public TelegramStickerService(Client telegramClient, TelegramAuthService authService,
+                                  AdaptiveConcurrencyLimiter requestLimiter, QueryCoalescer queryCoalescer,
+                                  TelegramMetrics metrics, TelegramObservations observations) {
+        super(telegramClient, authService, requestLimiter, queryCoalescer, metrics, observations);
     }
 
     public Mono<List<StickerSetResponseDto>> getInstalledStickerSets() {
-        return executeWithAuth("getInstalledStickerSets", sink -> {
+        return executeWithAuth("getInstalledStickerSets", () -> {
             TdApi.GetInstalledStickerSets getInstalledSets = new TdApi.GetInstalledStickerSets(
                 new TdApi.StickerTypeRegular()
             );
 
-            sendTelegramRequest(getInstalledSets, sink, (result, s) -> {
-                if (result instanceof TdApi.StickerSets stickerSets) {
-                    List<StickerSetResponseDto> response = convertStickerSetsToDto(stickerSets);
-                    s.success(response);
-                } else {
-                    throw new RuntimeException("Unexpected response type: " + result.getClass().getSimpleName());
-                }
-            });
+            return sendTelegramRequest(getInstalledSets, RequestPriority.BACKGROUND)
+                    .map(this::convertStickerSetsToDto);
         });
     }
 
     public Mono<StickerSetResponseDto> getStickerSet(String name) {
-        return executeWithAuth("getStickerSet", sink -> {
+        return executeWithAuth("getStickerSet", () -> {
             TdApi.GetStickerSet getStickerSet = new TdApi.GetStickerSet(Long.parseLong(name));
 
-            sendTelegramRequest(getStickerSet, sink, (result, s) -> {
-                if (result instanceof TdApi.StickerSet stickerSet) {
-                    StickerSetResponseDto response = convertStickerSetToDto(stickerSet);
-                    s.success(response);
-                } else {
-                    throw new RuntimeException("Unexpected response type: " + result.getClass().getSimpleName());
-                }
-            });
+            return sendTelegramRequest(getStickerSet, RequestPriority.BACKGROUND)
+                    .map(this::convertStickerSetToDto);
         });
     }
 
     public Mono<MessageResponseDto> sendSticker(SendStickerRequestDto request) {
-        return executeWithAuth("sendSticker", sink -> {
+        return executeWithAuth("sendSticker", () -> {
             // Создаем стикер сообщение
             TdApi.InputMessageSticker inputMessageSticker = new TdApi.InputMessageSticker();
             
@@ -90,23 +85,17 @@ public class TelegramStickerService extends BaseTelegramService {
                 inputMessageSticker
             );
 
-            sendTelegramRequest(sendMessage, sink, (result, s) -> {
-                if (result instanceof TdApi.Message message) {
-                    MessageResponseDto response = MessageResponseDto.success(
+            return sendTelegramRequest(sendMessage, RequestPriority.INTERACTIVE)
+                    .map(message -> MessageResponseDto.success(
                         message.id,
                         message.chatId,
                         "Sticker",
                         message.date
-                    );
-                    s.success(response);
-                } else {
-                    throw new RuntimeException("Unexpected response type: " + result.getClass().getSimpleName());
-                }
-            });
+                    ));
         });
     }
 
-    private List<StickerSetResponseDto> convertStickerSetsToDto(TdApi.StickerSets stickerSets) {
+    List<StickerSetResponseDto> convertStickerSetsToDto(TdApi.StickerSets stickerSets) {
         List<StickerSetResponseDto> result = new ArrayList<>();
         for (TdApi.StickerSetInfo setInfo : stickerSets.sets) {
             StickerSetResponseDto dto = StickerSetResponseDto.success(
@@ -124,7 +113,7 @@ public class TelegramStickerService extends BaseTelegramService {
         return result;
     }
 
-    private StickerSetResponseDto convertStickerSetToDto(TdApi.StickerSet stickerSet) {
+    StickerSetResponseDto convertStickerSetToDto(TdApi.StickerSet stickerSet) {
         StickerSetResponseDto dto = StickerSetResponseDto.success(
             stickerSet.id,
             stickerSet.name,
@@ -1,43 +1,58 @@
 package com.cypexa.telegram.client.service;
 
+import com.cypexa.telegram.client.jfr.TdlibUpdateEvent;
+import com.cypexa.telegram.client.metrics.TelegramMetrics;
+import com.cypexa.telegram.client.update.TelegramUpdateBus;
+import com.cypexa.telegram.client.update.UpdateListenerRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Принимает обновления TDLib и передает их обработчикам {@link com.cypexa.telegram.client.update.TelegramUpdateListener}
+ * через {@link UpdateListenerRegistry}, затем публикует их подписчикам {@link TelegramUpdateBus}
+ */
 @Component
 @Slf4j
 public class TelegramUpdateHandler {
 
-    private final ApplicationContext applicationContext;
+    private final UpdateListenerRegistry listenerRegistry;
+    private final TelegramUpdateBus updateBus;
+    private final TelegramMetrics metrics;
 
     @Autowired
-    public TelegramUpdateHandler(ApplicationContext applicationContext) {
-        this.applicationContext = applicationContext;
+    public TelegramUpdateHandler(UpdateListenerRegistry listenerRegistry, TelegramUpdateBus updateBus,
+                                 TelegramMetrics metrics) {
+        this.listenerRegistry = listenerRegistry;
+        this.updateBus = updateBus;
+        this.metrics = metrics;
     }
 
     public void handleUpdate(TdApi.Object update) {
+        Timer timer = metrics.updateTimer(update);
+        long startNanos = System.nanoTime();
+        TdlibUpdateEvent event = new TdlibUpdateEvent();
+        event.begin();
         try {
-            if (update instanceof TdApi.UpdateAuthorizationState) {
-                // Делегируем обработку аутентификации в TelegramAuthService
-                getTelegramAuthService().handleAuthorizationUpdate(
-                        ((TdApi.UpdateAuthorizationState) update).authorizationState
-                );
-            } else {
-                // Делегируем обработку чатов в TelegramChatService
-                getTelegramChatService().handleUpdate(update);
+            // Ошибки обработчиков логируются в реестре, чтобы сбой одного не мешал остальным
+            listenerRegistry.dispatch(update);
+            // Кэш чатов уже обновлен; подписчики получают обновление через свои буферы
+            updateBus.publish(update);
+        } finally {
+            timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+            metrics.recordUpdateLag(update);
+            event.end();
+            if (event.shouldCommit()) {
+                event.type = update.getClass().getSimpleName();
+                event.constructor = update.getConstructor();
+                event.chatId = Client.getChatId(update);
+                event.commit();
             }
-        } catch (Exception e) {
-            log.error("Error handling update: {}", update.getClass().getSimpleName(), e);
         }
     }
-
-    private TelegramAuthService getTelegramAuthService() {
-        return applicationContext.getBean(TelegramAuthService.class);
-    }
-
-    private TelegramChatService getTelegramChatService() {
-        return applicationContext.getBean(TelegramChatService.class);
-    }
 } 
\ No newline at end of file
@@ -0,0 +1,207 @@
+package com.cypexa.telegram.client.trace;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Компактная бинарная сериализация объектов TdApi для записи и воспроизведения потока обновлений.
+ * Объект кодируется номером класса в TdApi (упорядоченных по имени) и значениями публичных полей в порядке имен;
+ * целые числа записываются в формате varint (zigzag), строки - в UTF-8 с длиной, null-объект - одним байтом.
+ * Формат зависит от версии TdApi: запись читается только той же версией стартера.
+ */
+public final class TdApiCodec {
+
+    private static final int NULL_INDEX = 0;
+
+    // Номер 0 зарезервирован для null
+    private static final ClassInfo[] classesByIndex;
+    private static final Map<Class<?>, ClassInfo> classes = new HashMap<>();
+
+    static {
+        Class<?>[] types = Arrays.stream(TdApi.class.getDeclaredClasses())
+                .filter(type -> TdApi.Object.class.isAssignableFrom(type) && !Modifier.isAbstract(type.getModifiers()))
+                .sorted(Comparator.comparing(Class::getName))
+                .toArray(Class<?>[]::new);
+        classesByIndex = new ClassInfo[types.length + 1];
+        for (int i = 0; i < types.length; i++) {
+            ClassInfo info = new ClassInfo(types[i], i + 1);
+            classesByIndex[i + 1] = info;
+            classes.put(types[i], info);
+        }
+    }
+
+    private TdApiCodec() {
+    }
+
+    public static void write(DataOutput out, TdApi.Object object) throws IOException {
+        if (object == null) {
+            writeVarLong(out, NULL_INDEX);
+            return;
+        }
+        ClassInfo info = classes.get(object.getClass());
+        if (info == null) {
+            throw new IOException("Unknown TdApi class: " + object.getClass().getName());
+        }
+        writeVarLong(out, info.index);
+        try {
+            for (Field field : info.fields) {
+                writeValue(out, field.getType(), field.get(object));
+            }
+        } catch (IllegalAccessException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public static TdApi.Object read(DataInput in) throws IOException {
+        long index = readVarLong(in);
+        if (index == NULL_INDEX) {
+            return null;
+        }
+        if (index < 0 || index >= classesByIndex.length) {
+            throw new IOException("Unknown TdApi class index: " + index);
+        }
+        ClassInfo info = classesByIndex[(int) index];
+        try {
+            TdApi.Object object = info.newInstance.newInstance();
+            for (Field field : info.fields) {
+                field.set(object, readValue(in, field.getType()));
+            }
+            return object;
+        } catch (ReflectiveOperationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static void writeValue(DataOutput out, Class<?> type, Object value) throws IOException {
+        if (type == boolean.class) {
+            out.writeBoolean((Boolean) value);
+        } else if (type == int.class) {
+            writeVarLong(out, (Integer) value);
+        } else if (type == long.class) {
+            writeVarLong(out, (Long) value);
+        } else if (type == double.class) {
+            out.writeDouble((Double) value);
+        } else if (type == String.class) {
+            writeBytes(out, value == null ? null : ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (type == byte[].class) {
+            writeBytes(out, (byte[]) value);
+        } else if (type.isArray()) {
+            if (value == null) {
+                writeVarLong(out, 0);
+                return;
+            }
+            int length = Array.getLength(value);
+            writeVarLong(out, length + 1L);
+            Class<?> componentType = type.getComponentType();
+            for (int i = 0; i < length; i++) {
+                writeValue(out, componentType, Array.get(value, i));
+            }
+        } else {
+            write(out, (TdApi.Object) value);
+        }
+    }
+
+    private static Object readValue(DataInput in, Class<?> type) throws IOException {
+        if (type == boolean.class) {
+            return in.readBoolean();
+        } else if (type == int.class) {
+            return (int) readVarLong(in);
+        } else if (type == long.class) {
+            return readVarLong(in);
+        } else if (type == double.class) {
+            return in.readDouble();
+        } else if (type == String.class) {
+            byte[] bytes = readBytes(in);
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        } else if (type == byte[].class) {
+            return readBytes(in);
+        } else if (type.isArray()) {
+            long length = readVarLong(in) - 1;
+            if (length < 0) {
+                return null;
+            }
+            Class<?> componentType = type.getComponentType();
+            Object array = Array.newInstance(componentType, (int) length);
+            for (int i = 0; i < length; i++) {
+                Array.set(array, i, readValue(in, componentType));
+            }
+            return array;
+        } else {
+            return read(in);
+        }
+    }
+
+    private static void writeBytes(DataOutput out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            writeVarLong(out, 0);
+            return;
+        }
+        writeVarLong(out, bytes.length + 1L);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInput in) throws IOException {
+        long length = readVarLong(in) - 1;
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        // zigzag, чтобы небольшие отрицательные числа (id групп, смещения) тоже были короткими
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) ((v & 0x7F) | 0x80));
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (v >>> 1) ^ -(v & 1);
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static final class ClassInfo {
+        final int index;
+        final Field[] fields;
+        final Constructor<? extends TdApi.Object> newInstance;
+
+        @SuppressWarnings("unchecked")
+        ClassInfo(Class<?> type, int index) {
+            this.index = index;
+            try {
+                this.newInstance = (Constructor<? extends TdApi.Object>) type.getConstructor();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Unexpected TdApi class: " + type.getName(), e);
+            }
+            // Порядок getDeclaredFields не гарантирован, поэтому поля упорядочиваются по имени
+            this.fields = Arrays.stream(type.getDeclaredFields())
+                    .filter(field -> !Modifier.isStatic(field.getModifiers()))
+                    .sorted(Comparator.comparing(Field::getName))
+                    .toArray(Field[]::new);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.cypexa.telegram.client.trace;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Последовательное чтение файла, записанного {@link UpdateTraceWriter}
+ */
+public class UpdateTraceReader implements Closeable {
+
+    private final DataInputStream in;
+    private long timestampMicros;
+    private TdApi.Object update;
+
+    public UpdateTraceReader(Path file) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+        if (in.readInt() != UpdateTraceWriter.MAGIC) {
+            in.close();
+            throw new IOException("Not an update trace: " + file);
+        }
+        int version = in.readInt();
+        if (version != UpdateTraceWriter.VERSION) {
+            in.close();
+            throw new IOException("Unsupported update trace version " + version + ": " + file);
+        }
+    }
+
+    /**
+     * Читает следующую запись
+     *
+     * @return false, если записи закончились
+     */
+    public boolean next() throws IOException {
+        long deltaMicros;
+        try {
+            deltaMicros = TdApiCodec.readVarLong(in);
+        } catch (EOFException e) {
+            return false;
+        }
+        timestampMicros += deltaMicros;
+        update = TdApiCodec.read(in);
+        return true;
+    }
+
+    /**
+     * Время получения текущего обновления от начала записи в микросекундах
+     */
+    public long getTimestampMicros() {
+        return timestampMicros;
+    }
+
+    public TdApi.Object getUpdate() {
+        return update;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,72 @@
+package com.cypexa.telegram.client.trace;
+
+import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.TdApi;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Запись потока обновлений TDLib в файл для последующего воспроизведения ({@link UpdateTraceReader}).
+ * Каждая запись - время от начала записи в микросекундах (varint) и обновление в формате {@link TdApiCodec}.
+ * Запись может вызываться из нескольких потоков диспетчера; ошибка записи отключает дальнейшую запись,
+ * не влияя на обработку обновлений.
+ */
+@Slf4j
+public class UpdateTraceWriter implements Closeable {
+
+    static final int MAGIC = 0x54445452; // "TDTR"
+    static final int VERSION = 1;
+
+    private final Path file;
+    private final DataOutputStream out;
+    private final long startNanos = System.nanoTime();
+    private long previousMicros;
+    private long count;
+    private boolean failed;
+
+    public UpdateTraceWriter(Path file) throws IOException {
+        this.file = file;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    public void record(TdApi.Object update) {
+        record(update, (System.nanoTime() - startNanos) / 1000);
+    }
+
+    /**
+     * Записывает обновление с заданным временем от начала записи, например при генерации синтетической записи
+     */
+    public synchronized void record(TdApi.Object update, long timestampMicros) {
+        if (failed) {
+            return;
+        }
+        try {
+            // Время монотонно, поэтому хранится разница с предыдущей записью
+            long micros = Math.max(previousMicros, timestampMicros);
+            TdApiCodec.writeVarLong(out, micros - previousMicros);
+            TdApiCodec.write(out, update);
+            previousMicros = micros;
+            count++;
+        } catch (IOException | RuntimeException e) {
+            failed = true;
+            log.error("Failed to record update trace to {}, recording is stopped", file, e);
+        }
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+        log.info("Recorded {} updates to {}", count, file);
+    }
+}
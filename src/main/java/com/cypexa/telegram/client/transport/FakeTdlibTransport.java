@@ -0,0 +1,421 @@
+package com.cypexa.telegram.client.transport;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Имитация TDLib внутри процесса для нагрузочного тестирования и бенчмарков.
+ * Отвечает на основные запросы стартера (авторизация, GetChat, LoadChats, SendMessage, наборы стикеров)
+ * синтетическими данными с настраиваемой задержкой и долей ошибок, а также генерирует поток новых сообщений.
+ * Авторизация сразу переходит в AuthorizationStateReady после SetTdlibParameters.
+ * Ответы и обновления доставляются через DelayQueue в порядке времени готовности; как и в настоящей TDLib,
+ * события одного клиента приходят в порядке постановки - время готовности события не раньше,
+ * чем у предыдущего события этого клиента.
+ */
+public class FakeTdlibTransport implements Client.Transport {
+
+    private static final long UPDATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SUPERGROUP_ID_OFFSET = -1_000_000_000_000L;
+
+    private final long minLatencyNanos;
+    private final long maxLatencyNanos;
+    private final double errorRate;
+    private final int errorCode;
+    private final int chatCount;
+    private final int folderCount;
+    private final int stickerSetCount;
+    private final int stickersPerSet;
+    private final int updateRate;
+
+    private final DelayQueue<Event> events = new DelayQueue<>();
+    private final AtomicLong eventSequence = new AtomicLong();
+    private final AtomicInteger clientIdSequence = new AtomicInteger();
+    private final Map<Integer, FakeClient> clients = new ConcurrentHashMap<>();
+
+    public FakeTdlibTransport(TelegramClientProperties.Fake settings) {
+        this.minLatencyNanos = settings.getMinLatency().toNanos();
+        this.maxLatencyNanos = Math.max(minLatencyNanos, settings.getMaxLatency().toNanos());
+        this.errorRate = settings.getErrorRate();
+        this.errorCode = settings.getErrorCode();
+        this.chatCount = settings.getChatCount();
+        this.folderCount = settings.getFolderCount();
+        this.stickerSetCount = settings.getStickerSetCount();
+        this.stickersPerSet = settings.getStickersPerSet();
+        this.updateRate = settings.getUpdateRate();
+
+        if (updateRate > 0) {
+            Thread updateThread = new Thread(this::generateUpdates, "Fake TDLib update thread");
+            updateThread.setDaemon(true);
+            updateThread.start();
+        }
+    }
+
+    @Override
+    public int createClient() {
+        int clientId = clientIdSequence.incrementAndGet();
+        FakeClient client = new FakeClient(chatCount, folderCount);
+        clients.put(clientId, client);
+        enqueue(clientId, client, 0, new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateWaitTdlibParameters()), 0);
+        return clientId;
+    }
+
+    @Override
+    public void send(int clientId, long queryId, TdApi.Function function) {
+        FakeClient client = clients.get(clientId);
+        long delayNanos = latencyNanos();
+        if (client == null) {
+            enqueue(clientId, null, queryId, new TdApi.Error(400, "Client is closed"), delayNanos);
+            return;
+        }
+        if (errorRate > 0 && !isAuthorizationFunction(function) && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            enqueue(clientId, client, queryId, new TdApi.Error(errorCode, "Fake TDLib error"), delayNanos);
+            return;
+        }
+        enqueue(clientId, client, queryId, handle(clientId, client, function, delayNanos), delayNanos);
+    }
+
+    @Override
+    public int receive(int[] clientIds, long[] eventIds, TdApi.Object[] events, double timeout) {
+        Event event;
+        try {
+            event = this.events.poll((long) (timeout * 1e9), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+        int count = 0;
+        while (event != null) {
+            clientIds[count] = event.clientId;
+            eventIds[count] = event.eventId;
+            events[count] = event.object;
+            count++;
+            event = count < events.length ? this.events.poll() : null;
+        }
+        return count;
+    }
+
+    @Override
+    public TdApi.Object execute(TdApi.Function function) {
+        return switch (function.getConstructor()) {
+            case TdApi.SetLogVerbosityLevel.CONSTRUCTOR, TdApi.SetLogStream.CONSTRUCTOR -> new TdApi.Ok();
+            case TdApi.GetOption.CONSTRUCTOR -> new TdApi.OptionValueString("fake");
+            default -> new TdApi.Error(400, "Function can't be executed synchronously");
+        };
+    }
+
+    @Override
+    public void setLogMessageHandler(int maxVerbosityLevel, Client.LogMessageHandler logMessageHandler) {
+        // Имитация не пишет внутренний лог TDLib
+    }
+
+    // Формирует ответ на запрос; сопутствующие обновления ставятся в очередь с той же задержкой перед ответом
+    private TdApi.Object handle(int clientId, FakeClient client, TdApi.Function function, long delayNanos) {
+        switch (function.getConstructor()) {
+            case TdApi.SetTdlibParameters.CONSTRUCTOR:
+                if (folderCount > 0) {
+                    enqueue(clientId, client, 0, chatFolders(), delayNanos);
+                }
+                enqueue(clientId, client, 0, new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateReady()), delayNanos);
+                return new TdApi.Ok();
+            case TdApi.SetAuthenticationPhoneNumber.CONSTRUCTOR:
+            case TdApi.CheckAuthenticationCode.CONSTRUCTOR:
+            case TdApi.TestCallEmpty.CONSTRUCTOR:
+                return new TdApi.Ok();
+            case TdApi.GetOption.CONSTRUCTOR:
+                return new TdApi.OptionValueString("fake");
+            case TdApi.Close.CONSTRUCTOR:
+                clients.remove(clientId);
+                enqueue(clientId, client, 0, new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateClosing()), delayNanos);
+                enqueue(clientId, client, 0, new TdApi.UpdateAuthorizationState(new TdApi.AuthorizationStateClosed()), delayNanos);
+                return new TdApi.Ok();
+            case TdApi.LoadChats.CONSTRUCTOR:
+                return loadChats(clientId, client, (TdApi.LoadChats) function, delayNanos);
+            case TdApi.GetChat.CONSTRUCTOR: {
+                int index = client.indexOf(((TdApi.GetChat) function).chatId);
+                return index < 0 ? new TdApi.Error(400, "Chat not found") : client.chat(index);
+            }
+            case TdApi.SendMessage.CONSTRUCTOR:
+                return sendMessage(clientId, client, (TdApi.SendMessage) function, delayNanos);
+            case TdApi.GetInstalledStickerSets.CONSTRUCTOR:
+                return installedStickerSets();
+            case TdApi.GetStickerSet.CONSTRUCTOR: {
+                long setId = ((TdApi.GetStickerSet) function).setId;
+                return setId < 1 || setId > stickerSetCount ? new TdApi.Error(400, "STICKERSET_INVALID") : stickerSet(setId);
+            }
+            default:
+                return new TdApi.Error(400, "Function " + function.getClass().getSimpleName() + " is not supported by fake TDLib");
+        }
+    }
+
+    private TdApi.Object loadChats(int clientId, FakeClient client, TdApi.LoadChats request, long delayNanos) {
+        if (request.chatList != null && request.chatList.getConstructor() != TdApi.ChatListMain.CONSTRUCTOR) {
+            return new TdApi.Error(404, "Not Found");
+        }
+        int from;
+        int to;
+        synchronized (client) {
+            from = client.loadedCount;
+            to = Math.min(client.chatIds.length, from + Math.max(1, request.limit));
+            client.loadedCount = to;
+        }
+        if (from == to) {
+            return new TdApi.Error(404, "Not Found");
+        }
+        for (int i = from; i < to; i++) {
+            enqueue(clientId, client, 0, new TdApi.UpdateNewChat(client.chat(i)), delayNanos);
+        }
+        return new TdApi.Ok();
+    }
+
+    private TdApi.Object sendMessage(int clientId, FakeClient client, TdApi.SendMessage request, long delayNanos) {
+        int index = client.indexOf(request.chatId);
+        if (index < 0) {
+            return new TdApi.Error(400, "Chat not found");
+        }
+        TdApi.MessageContent content;
+        if (request.inputMessageContent instanceof TdApi.InputMessageText text) {
+            content = new TdApi.MessageText(text.text, null, null);
+        } else if (request.inputMessageContent instanceof TdApi.InputMessageSticker sticker) {
+            content = new TdApi.MessageSticker(sticker(0, 0), false);
+        } else {
+            return new TdApi.Error(400, "Message content is not supported by fake TDLib");
+        }
+        // Сообщение создается и ставится в очередь атомарно, чтобы обновления последнего сообщения не перемешивались
+        synchronized (client) {
+            TdApi.Message message = client.newMessage(index, content);
+            enqueue(clientId, client, 0, new TdApi.UpdateNewMessage(message), delayNanos);
+            enqueue(clientId, client, 0, client.lastMessageUpdate(index, message), delayNanos);
+            return message;
+        }
+    }
+
+    // Папки с id 1..folderCount, как updateChatFolders настоящей TDLib при запуске
+    private TdApi.UpdateChatFolders chatFolders() {
+        TdApi.ChatFolderInfo[] folders = new TdApi.ChatFolderInfo[folderCount];
+        for (int i = 0; i < folderCount; i++) {
+            TdApi.ChatFolderName name = new TdApi.ChatFolderName(
+                    new TdApi.FormattedText("Fake folder #" + (i + 1), new TdApi.TextEntity[0]), false);
+            folders[i] = new TdApi.ChatFolderInfo(i + 1, name, null, -1, false, false);
+        }
+        return new TdApi.UpdateChatFolders(folders, 0, false);
+    }
+
+    private TdApi.StickerSets installedStickerSets() {
+        TdApi.StickerSetInfo[] sets = new TdApi.StickerSetInfo[stickerSetCount];
+        for (int i = 0; i < sets.length; i++) {
+            TdApi.StickerSetInfo set = new TdApi.StickerSetInfo();
+            set.id = i + 1;
+            set.name = "fake_set_" + set.id;
+            set.title = "Fake sticker set #" + set.id;
+            set.isInstalled = true;
+            set.isOfficial = i == 0;
+            set.size = stickersPerSet;
+            set.covers = new TdApi.Sticker[0];
+            sets[i] = set;
+        }
+        return new TdApi.StickerSets(sets.length, sets);
+    }
+
+    private TdApi.StickerSet stickerSet(long setId) {
+        TdApi.StickerSet set = new TdApi.StickerSet();
+        set.id = setId;
+        set.name = "fake_set_" + setId;
+        set.title = "Fake sticker set #" + setId;
+        set.isInstalled = true;
+        set.isOfficial = setId == 1;
+        set.stickers = new TdApi.Sticker[stickersPerSet];
+        for (int i = 0; i < stickersPerSet; i++) {
+            set.stickers[i] = sticker(setId, i);
+        }
+        set.emojis = new TdApi.Emojis[0];
+        return set;
+    }
+
+    private static TdApi.Sticker sticker(long setId, int index) {
+        TdApi.Sticker sticker = new TdApi.Sticker();
+        sticker.id = setId * 1000 + index;
+        sticker.setId = setId;
+        sticker.width = 512;
+        sticker.height = 512;
+        sticker.emoji = "🙂";
+        TdApi.LocalFile local = new TdApi.LocalFile();
+        local.path = "stickers/" + setId + "/" + index + ".webp";
+        sticker.sticker = new TdApi.File((int) sticker.id, 16384, 16384, local, null);
+        return sticker;
+    }
+
+    private void generateUpdates() {
+        double pending = 0;
+        long nextNanos = System.nanoTime();
+        while (true) {
+            nextNanos += UPDATE_INTERVAL_NANOS;
+            LockSupport.parkNanos(nextNanos - System.nanoTime());
+            pending += updateRate * (UPDATE_INTERVAL_NANOS / 1e9);
+            for (; pending >= 1; pending--) {
+                clients.forEach(this::generateUpdate);
+            }
+        }
+    }
+
+    private void generateUpdate(int clientId, FakeClient client) {
+        int loadedCount;
+        synchronized (client) {
+            loadedCount = client.loadedCount;
+        }
+        // Обновления приходят только для чатов, о которых клиент уже получил UpdateNewChat
+        if (loadedCount == 0) {
+            return;
+        }
+        int index = ThreadLocalRandom.current().nextInt(loadedCount);
+        TdApi.MessageContent content =
+                new TdApi.MessageText(new TdApi.FormattedText("Fake message", new TdApi.TextEntity[0]), null, null);
+        synchronized (client) {
+            TdApi.Message message = client.newMessage(index, content);
+            enqueue(clientId, client, 0, new TdApi.UpdateNewMessage(message), 0);
+            enqueue(clientId, client, 0, client.lastMessageUpdate(index, message), 0);
+        }
+    }
+
+    private static boolean isAuthorizationFunction(TdApi.Function function) {
+        return switch (function.getConstructor()) {
+            case TdApi.SetTdlibParameters.CONSTRUCTOR, TdApi.SetAuthenticationPhoneNumber.CONSTRUCTOR,
+                 TdApi.CheckAuthenticationCode.CONSTRUCTOR, TdApi.GetOption.CONSTRUCTOR, TdApi.Close.CONSTRUCTOR -> true;
+            default -> false;
+        };
+    }
+
+    private long latencyNanos() {
+        return minLatencyNanos == maxLatencyNanos ? minLatencyNanos
+                : ThreadLocalRandom.current().nextLong(minLatencyNanos, maxLatencyNanos + 1);
+    }
+
+    // Ставит событие в очередь не раньше предыдущего события клиента; client равен null для закрытого клиента
+    private void enqueue(int clientId, FakeClient client, long eventId, TdApi.Object object, long delayNanos) {
+        long dueNanos = System.nanoTime() + delayNanos;
+        if (client == null) {
+            events.add(new Event(clientId, eventId, object, dueNanos, eventSequence.incrementAndGet()));
+            return;
+        }
+        synchronized (client) {
+            dueNanos = Math.max(dueNanos, client.lastDueNanos);
+            client.lastDueNanos = dueNanos;
+            events.add(new Event(clientId, eventId, object, dueNanos, eventSequence.incrementAndGet()));
+        }
+    }
+
+    /**
+     * Синтетические чаты одного клиента. Чаты хранятся в массивах, а объекты TdApi создаются на каждый ответ,
+     * как и в настоящей TDLib, поэтому клиент может свободно изменять полученные объекты
+     */
+    private static final class FakeClient {
+        final long[] chatIds;
+        final long[] orders;
+        final TdApi.Message[] lastMessages;
+        final Map<Long, Integer> indexByChatId;
+        final int folderCount;
+        long nextOrder;
+        long nextMessageId = 1 << 20;
+        int loadedCount;
+        long lastDueNanos = Long.MIN_VALUE;
+
+        FakeClient(int chatCount, int folderCount) {
+            this.folderCount = folderCount;
+            chatIds = new long[chatCount];
+            orders = new long[chatCount];
+            lastMessages = new TdApi.Message[chatCount];
+            indexByChatId = new ConcurrentHashMap<>(chatCount * 2);
+            for (int i = 0; i < chatCount; i++) {
+                chatIds[i] = i % 3 == 0 ? SUPERGROUP_ID_OFFSET - i : i + 1;
+                // Первые чаты выше в списке, как при загрузке из настоящей TDLib
+                orders[i] = (long) (chatCount - i) << 20;
+                indexByChatId.put(chatIds[i], i);
+            }
+            nextOrder = (long) (chatCount + 1) << 20;
+        }
+
+        int indexOf(long chatId) {
+            Integer index = indexByChatId.get(chatId);
+            return index == null ? -1 : index;
+        }
+
+        synchronized TdApi.Chat chat(int index) {
+            TdApi.Chat chat = new TdApi.Chat();
+            chat.id = chatIds[index];
+            chat.type = chat.id < 0 ? new TdApi.ChatTypeSupergroup(-chat.id, false) : new TdApi.ChatTypePrivate(chat.id);
+            chat.title = "Fake chat #" + index;
+            chat.lastMessage = lastMessages[index];
+            chat.positions = positions(index);
+            chat.chatLists = new TdApi.ChatList[chat.positions.length];
+            for (int i = 0; i < chat.positions.length; i++) {
+                chat.chatLists[i] = chat.positions[i].list;
+            }
+            return chat;
+        }
+
+        // Чат в основном списке и, если заданы папки, в папке index % folderCount + 1
+        private TdApi.ChatPosition[] positions(int index) {
+            TdApi.ChatPosition main = new TdApi.ChatPosition(new TdApi.ChatListMain(), orders[index], false, null);
+            if (folderCount == 0) {
+                return new TdApi.ChatPosition[]{main};
+            }
+            return new TdApi.ChatPosition[]{main,
+                    new TdApi.ChatPosition(new TdApi.ChatListFolder(index % folderCount + 1), orders[index], false, null)};
+        }
+
+        synchronized TdApi.Message newMessage(int index, TdApi.MessageContent content) {
+            TdApi.Message message = new TdApi.Message();
+            message.id = nextMessageId++;
+            message.chatId = chatIds[index];
+            message.date = (int) (System.currentTimeMillis() / 1000);
+            message.content = content;
+            lastMessages[index] = message;
+            // Чат с новым сообщением поднимается на верх списка
+            orders[index] = nextOrder++;
+            return message;
+        }
+
+        synchronized TdApi.UpdateChatLastMessage lastMessageUpdate(int index, TdApi.Message message) {
+            return new TdApi.UpdateChatLastMessage(chatIds[index], message, positions(index));
+        }
+    }
+
+    private static final class Event implements Delayed {
+        final int clientId;
+        final long eventId;
+        final TdApi.Object object;
+        final long dueNanos;
+        final long sequence;
+
+        Event(int clientId, long eventId, TdApi.Object object, long dueNanos, long sequence) {
+            this.clientId = clientId;
+            this.eventId = eventId;
+            this.object = object;
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Event event = (Event) other;
+            int result = Long.compare(dueNanos, event.dueNanos);
+            // События с одинаковым временем доставляются в порядке постановки
+            return result != 0 ? result : Long.compare(sequence, event.sequence);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.cypexa.telegram.client.update;
+
+import com.cypexa.telegram.client.properties.TelegramClientProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.Client;
+import org.drinkless.tdlib.TdApi;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Поток обновлений TDLib для нескольких подписчиков (аналитика, оповещения, пересылка).
+ * Обновления публикуются из TelegramUpdateHandler после обработчиков {@link TelegramUpdateListener},
+ * поэтому подписчики не задерживают обновление кэша чатов.
+ * <p>
+ * У каждого подписчика свой ограниченный буфер и стратегия переполнения; обновления, не прошедшие
+ * {@link UpdateFilter}, в буфер не попадают. Подписчик получает обновления в потоке Reactor boundedElastic,
+ * а не в потоке, публикующем обновления, и может выполнять блокирующие действия.
+ * <p>
+ * Метрики: {@code tdlib.updates.bus.subscribers} и {@code tdlib.updates.bus.dropped} - число обновлений,
+ * отброшенных при переполнении буферов.
+ */
+@Component
+@Slf4j
+public class TelegramUpdateBus implements MeterBinder {
+
+    // Сколько обновлений поток подписчика забирает из буфера за раз
+    private static final int PREFETCH = 32;
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    private final int defaultBufferSize;
+    private final UpdateOverflowStrategy defaultOverflowStrategy;
+    private final Scheduler scheduler = Schedulers.boundedElastic();
+    private final LongAdder droppedCount = new LongAdder();
+    private volatile Subscriber[] subscribers = NO_SUBSCRIBERS;
+
+    public TelegramUpdateBus(TelegramClientProperties properties) {
+        this.defaultBufferSize = properties.getUpdateBus().getBufferSize();
+        this.defaultOverflowStrategy = properties.getUpdateBus().getOverflowStrategy();
+    }
+
+    /**
+     * Все обновления с буфером и стратегией переполнения по умолчанию (spring.telegram.client.update-bus)
+     */
+    public Flux<TdApi.Update> updates() {
+        return updates(UpdateFilter.all());
+    }
+
+    /**
+     * Обновления указанного типа
+     */
+    public <T extends TdApi.Update> Flux<T> updates(Class<T> type) {
+        return updates(UpdateFilter.types(type)).cast(type);
+    }
+
+    public Flux<TdApi.Update> updates(UpdateFilter filter) {
+        return updates(filter, defaultBufferSize, defaultOverflowStrategy);
+    }
+
+    /**
+     * Обновления, прошедшие фильтр, с буфером bufferSize и стратегией переполнения overflowStrategy
+     */
+    public Flux<TdApi.Update> updates(UpdateFilter filter, int bufferSize, UpdateOverflowStrategy overflowStrategy) {
+        Flux<TdApi.Update> updates = Flux.<TdApi.Update>create(sink -> {
+            Subscriber subscriber = new Subscriber(filter, sink);
+            addSubscriber(subscriber);
+            sink.onDispose(() -> removeSubscriber(subscriber));
+        }, FluxSink.OverflowStrategy.BUFFER);
+        updates = switch (overflowStrategy) {
+            case DROP_OLDEST -> updates.onBackpressureBuffer(bufferSize, this::onDropped, BufferOverflowStrategy.DROP_OLDEST);
+            case DROP_NEWEST -> updates.onBackpressureBuffer(bufferSize, this::onDropped, BufferOverflowStrategy.DROP_LATEST);
+            case LATEST -> updates.onBackpressureLatest();
+        };
+        return updates.publishOn(scheduler, PREFETCH);
+    }
+
+    /**
+     * Публикует обновление подписчикам. Вызывается из TelegramUpdateHandler и не блокируется
+     */
+    public void publish(TdApi.Object object) {
+        Subscriber[] current = subscribers;
+        if (current.length == 0 || !(object instanceof TdApi.Update update)) {
+            return;
+        }
+        int constructor = update.getConstructor();
+        long chatId = 0;
+        boolean haveChatId = false;
+        for (Subscriber subscriber : current) {
+            if (subscriber.filter.isChatFilter() && !haveChatId) {
+                chatId = Client.getChatId(update);
+                haveChatId = true;
+            }
+            if (subscriber.filter.matches(constructor, chatId)) {
+                subscriber.sink.next(update);
+            }
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("tdlib.updates.bus.subscribers", this, TelegramUpdateBus::getSubscriberCount)
+                .description("Number of TelegramUpdateBus subscribers")
+                .register(registry);
+        FunctionCounter.builder("tdlib.updates.bus.dropped", this, TelegramUpdateBus::getDroppedCount)
+                .description("Number of updates dropped on TelegramUpdateBus subscriber buffer overflow")
+                .register(registry);
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.length;
+    }
+
+    /**
+     * Число обновлений, отброшенных при переполнении буферов подписчиков
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    private void onDropped(TdApi.Update update) {
+        droppedCount.increment();
+    }
+
+    private synchronized void addSubscriber(Subscriber subscriber) {
+        Subscriber[] current = subscribers;
+        Subscriber[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = subscriber;
+        subscribers = updated;
+        log.debug("Update bus subscriber added, {} subscribers", updated.length);
+    }
+
+    private synchronized void removeSubscriber(Subscriber subscriber) {
+        Subscriber[] current = subscribers;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscriber) {
+                Subscriber[] updated = new Subscriber[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, current.length - i - 1);
+                subscribers = updated;
+                log.debug("Update bus subscriber removed, {} subscribers", updated.length);
+                return;
+            }
+        }
+    }
+
+    private record Subscriber(UpdateFilter filter, FluxSink<TdApi.Update> sink) {
+    }
+}
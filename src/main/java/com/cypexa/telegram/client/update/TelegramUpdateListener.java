@@ -0,0 +1,34 @@
+package com.cypexa.telegram.client.update;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Помечает метод бина как обработчик обновлений TDLib указанных типов.
+ * Метод принимает один параметр - обновление; если типы не указаны, тип обновления берется из параметра:
+ * <pre>{@code
+ * @TelegramUpdateListener
+ * public void onNewMessage(TdApi.UpdateNewMessage update) { ... }
+ *
+ * @TelegramUpdateListener({TdApi.UpdateChatTitle.class, TdApi.UpdateChatPhoto.class})
+ * public void onChatChanged(TdApi.Update update) { ... }
+ * }</pre>
+ * Обработчик вызывается в потоке диспетчера обновлений и не должен блокироваться.
+ *
+ * @see UpdateListenerRegistry
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface TelegramUpdateListener {
+
+    /**
+     * Типы обновлений; по умолчанию - тип параметра метода
+     */
+    Class<? extends TdApi.Object>[] value() default {};
+}
@@ -0,0 +1,66 @@
+package com.cypexa.telegram.client.update;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.util.Arrays;
+
+/**
+ * Отбор обновлений для подписчика {@link TelegramUpdateBus} по типу (конструктору) и id чата.
+ * Проверка выполняется до постановки обновления в буфер подписчика
+ */
+public final class UpdateFilter {
+
+    private static final UpdateFilter ALL = new UpdateFilter(null, 0);
+
+    // Отсортированные конструкторы; null - любой тип
+    private final int[] constructors;
+    // 0 - любой чат
+    private final long chatId;
+
+    private UpdateFilter(int[] constructors, long chatId) {
+        this.constructors = constructors;
+        this.chatId = chatId;
+    }
+
+    public static UpdateFilter all() {
+        return ALL;
+    }
+
+    /**
+     * Обновления указанных типов
+     */
+    @SafeVarargs
+    public static UpdateFilter types(Class<? extends TdApi.Update>... types) {
+        int[] constructors = new int[types.length];
+        for (int i = 0; i < types.length; i++) {
+            constructors[i] = UpdateListenerRegistry.getConstructor(types[i]);
+        }
+        Arrays.sort(constructors);
+        return new UpdateFilter(constructors, 0);
+    }
+
+    /**
+     * Обновления чата (по {@link org.drinkless.tdlib.Client#getChatId(TdApi.Object)})
+     */
+    public static UpdateFilter chat(long chatId) {
+        return new UpdateFilter(null, chatId);
+    }
+
+    /**
+     * Обновления указанных типов в указанном чате
+     */
+    public UpdateFilter inChat(long chatId) {
+        return new UpdateFilter(constructors, chatId);
+    }
+
+    boolean isChatFilter() {
+        return chatId != 0;
+    }
+
+    boolean matches(int constructor, long updateChatId) {
+        if (constructors != null && Arrays.binarySearch(constructors, constructor) < 0) {
+            return false;
+        }
+        return chatId == 0 || chatId == updateChatId;
+    }
+}
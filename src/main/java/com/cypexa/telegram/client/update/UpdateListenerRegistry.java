@@ -0,0 +1,218 @@
+package com.cypexa.telegram.client.update;
+
+import lombok.extern.slf4j.Slf4j;
+import org.drinkless.tdlib.TdApi;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Реестр обработчиков обновлений TDLib, помеченных {@link TelegramUpdateListener}.
+ * Методы бинов находятся при их создании и после создания всех бинов связываются в MethodHandle,
+ * разложенные в таблицу с открытой адресацией по конструктору обновления. Доставка обновления - один поиск
+ * в таблице и вызов MethodHandle, без рефлексии и поиска бинов.
+ * <p>
+ * Обновления, пришедшие до готовности реестра (клиент TDLib создается раньше остальных бинов),
+ * накапливаются и доставляются по порядку, когда все обработчики зарегистрированы.
+ */
+@Component
+@Slf4j
+public class UpdateListenerRegistry implements BeanPostProcessor, SmartInitializingSingleton {
+
+    private static final MethodType LISTENER_TYPE = MethodType.methodType(void.class, TdApi.Object.class);
+
+    private final Map<Integer, List<Listener>> listenersByConstructor = new LinkedHashMap<>();
+    private final Set<Class<?>> classesWithoutListeners = ConcurrentHashMap.newKeySet();
+    private final List<TdApi.Object> pendingUpdates = new ArrayList<>();
+    private volatile ListenerTable table;
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        register(bean);
+        return bean;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        start();
+    }
+
+    /**
+     * Регистрирует методы бина, помеченные {@link TelegramUpdateListener}. Бины контекста регистрируются
+     * автоматически; метод нужен для объектов, созданных вне контекста
+     */
+    public void register(Object bean) {
+        Class<?> targetClass = AopUtils.getTargetClass(bean);
+        if (classesWithoutListeners.contains(targetClass)) {
+            return;
+        }
+        Map<Method, TelegramUpdateListener> methods = MethodIntrospector.selectMethods(targetClass,
+                (MethodIntrospector.MetadataLookup<TelegramUpdateListener>) method ->
+                        AnnotatedElementUtils.findMergedAnnotation(method, TelegramUpdateListener.class));
+        if (methods.isEmpty()) {
+            classesWithoutListeners.add(targetClass);
+            return;
+        }
+        methods.forEach((method, annotation) -> register(bean, AopUtils.selectInvocableMethod(method, bean.getClass()), annotation));
+    }
+
+    /**
+     * Связывает зарегистрированные обработчики и доставляет накопленные обновления.
+     * Обработчики, зарегистрированные позже, не учитываются
+     */
+    public void start() {
+        synchronized (pendingUpdates) {
+            if (table != null) {
+                return;
+            }
+            ListenerTable newTable;
+            synchronized (listenersByConstructor) {
+                newTable = new ListenerTable(listenersByConstructor);
+            }
+            log.info("Registered {} TDLib update listeners for {} update types, delivering {} pending updates",
+                    newTable.listenerCount, newTable.size, pendingUpdates.size());
+            for (TdApi.Object update : pendingUpdates) {
+                invoke(newTable.get(update.getConstructor()), update);
+            }
+            pendingUpdates.clear();
+            table = newTable;
+        }
+    }
+
+    /**
+     * Передает обновление обработчикам его типа
+     */
+    public void dispatch(TdApi.Object update) {
+        ListenerTable current = table;
+        if (current == null) {
+            synchronized (pendingUpdates) {
+                current = table;
+                if (current == null) {
+                    pendingUpdates.add(update);
+                    return;
+                }
+            }
+        }
+        invoke(current.get(update.getConstructor()), update);
+    }
+
+    private static void invoke(Listener[] listeners, TdApi.Object update) {
+        if (listeners == null) {
+            return;
+        }
+        for (Listener listener : listeners) {
+            try {
+                listener.handle.invokeExact(update);
+            } catch (Throwable e) {
+                log.error("Error handling update {} in {}", update.getClass().getSimpleName(), listener.name, e);
+            }
+        }
+    }
+
+    private void register(Object bean, Method method, TelegramUpdateListener annotation) {
+        if (method.getParameterCount() != 1) {
+            throw new IllegalStateException("Update listener must have a single parameter: " + method);
+        }
+        Class<?> parameterType = method.getParameterTypes()[0];
+        List<Class<?>> updateTypes = annotation.value().length == 0
+                ? List.of(parameterType)
+                : Arrays.asList(annotation.value());
+
+        MethodHandle handle;
+        try {
+            ReflectionUtils.makeAccessible(method);
+            handle = MethodHandles.lookup().unreflect(method).bindTo(bean).asType(LISTENER_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Update listener is not accessible: " + method, e);
+        }
+        Listener listener = new Listener(bean.getClass().getSimpleName() + "." + method.getName(), handle);
+
+        synchronized (listenersByConstructor) {
+            for (Class<?> updateType : updateTypes) {
+                if (!parameterType.isAssignableFrom(updateType)) {
+                    throw new IllegalStateException("Update listener " + method + " can't accept " + updateType.getName());
+                }
+                listenersByConstructor.computeIfAbsent(getConstructor(updateType), constructor -> new ArrayList<>())
+                        .add(listener);
+            }
+        }
+    }
+
+    static int getConstructor(Class<?> updateType) {
+        if (!TdApi.Object.class.isAssignableFrom(updateType) || Modifier.isAbstract(updateType.getModifiers())) {
+            throw new IllegalStateException("Update listener type must be a concrete TdApi class: " + updateType.getName());
+        }
+        try {
+            return updateType.getField("CONSTRUCTOR").getInt(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Unexpected TdApi class: " + updateType.getName(), e);
+        }
+    }
+
+    private record Listener(String name, MethodHandle handle) {
+    }
+
+    /**
+     * Неизменяемая таблица обработчиков с открытой адресацией по конструктору обновления
+     */
+    private static final class ListenerTable {
+        final int[] constructors;
+        final Listener[][] listeners;
+        final int mask;
+        final int size;
+        final int listenerCount;
+
+        ListenerTable(Map<Integer, List<Listener>> listenersByConstructor) {
+            int capacity = Integer.highestOneBit(Math.max(1, listenersByConstructor.size()) * 2 - 1) << 1;
+            constructors = new int[capacity];
+            listeners = new Listener[capacity][];
+            mask = capacity - 1;
+            size = listenersByConstructor.size();
+            int count = 0;
+            for (Map.Entry<Integer, List<Listener>> entry : listenersByConstructor.entrySet()) {
+                int slot = slot(entry.getKey());
+                while (listeners[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                constructors[slot] = entry.getKey();
+                listeners[slot] = entry.getValue().toArray(new Listener[0]);
+                count += listeners[slot].length;
+            }
+            listenerCount = count;
+        }
+
+        Listener[] get(int constructor) {
+            int slot = slot(constructor);
+            Listener[] slotListeners;
+            while ((slotListeners = listeners[slot]) != null) {
+                if (constructors[slot] == constructor) {
+                    return slotListeners;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return null;
+        }
+
+        private int slot(int constructor) {
+            int h = constructor * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.cypexa.telegram.client.update;
+
+/**
+ * Поведение подписчика {@link TelegramUpdateBus}, не успевающего обрабатывать обновления,
+ * при заполнении его буфера
+ */
+public enum UpdateOverflowStrategy {
+    // Отбросить самое старое обновление в буфере
+    DROP_OLDEST,
+    // Отбросить новое обновление
+    DROP_NEWEST,
+    // Хранить только последнее необработанное обновление
+    LATEST
+}
@@ -6,6 +6,10 @@
 //
 package org.drinkless.tdlib;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -13,14 +17,6 @@ import java.util.concurrent.atomic.AtomicLong;
  * Main class for interaction with the TDLib.
  */
 public final class Client {
-    static {
-        try {
-            System.loadLibrary("tdjni");
-        } catch (UnsatisfiedLinkError e) {
-            e.printStackTrace();
-        }
-    }
-
     /**
      * Interface for handler for results of queries to TDLib and incoming updates from TDLib.
      */
@@ -62,6 +58,79 @@ public final class Client {
         void onLogMessage(int verbosityLevel, String message);
     }
 
+    /**
+     * Interface for executor of result handlers and update handlers.
+     * By default, all handlers are invoked directly from the thread receiving events from TDLib.
+     */
+    public interface Dispatcher {
+        /**
+         * Schedules processing of an event received from TDLib.
+         *
+         * @param partitionKey Key of the event partition. Events with equal keys must be processed
+         *                     sequentially in the order they were dispatched; events with different
+         *                     keys may be processed in parallel.
+         * @param task         Task processing the event.
+         */
+        void dispatch(long partitionKey, Runnable task);
+
+        /**
+         * Schedules a task to be run after all events dispatched before the call are processed in every partition.
+         * Must not block the calling thread, because it can be called from a handler of a dispatched event.
+         *
+         * @param task Task to be run after the events; may be run in the calling thread if they are already processed.
+         */
+        void dispatchBarrier(Runnable task);
+    }
+
+    /**
+     * Interface for the transport delivering queries to a TDLib instance and receiving its responses and updates.
+     * By default, the native TDLib loaded from the tdjni library is used.
+     */
+    public interface Transport {
+        /**
+         * Creates a new TDLib instance.
+         *
+         * @return identifier of the created instance, which is used in all other methods.
+         */
+        int createClient();
+
+        /**
+         * Sends a query to a TDLib instance. Must not block.
+         *
+         * @param clientId Identifier of the TDLib instance.
+         * @param queryId  Positive identifier of the query, which is returned together with the query result.
+         * @param function The query.
+         */
+        void send(int clientId, long queryId, TdApi.Function function);
+
+        /**
+         * Waits for responses and updates of all TDLib instances. Called only from the receiving thread.
+         *
+         * @param clientIds Array to store identifiers of instances which sent the events.
+         * @param eventIds  Array to store query identifiers of the events; 0 for updates.
+         * @param events    Array to store the events.
+         * @param timeout   The maximum time to wait for events in seconds.
+         * @return number of stored events.
+         */
+        int receive(int[] clientIds, long[] eventIds, TdApi.Object[] events, double timeout);
+
+        /**
+         * Synchronously executes a query, which can be executed synchronously.
+         *
+         * @param function The query.
+         * @return result of the query or TdApi.Error.
+         */
+        TdApi.Object execute(TdApi.Function function);
+
+        /**
+         * Sets the handler for messages that are added to the internal TDLib log.
+         *
+         * @param maxVerbosityLevel The maximum verbosity level of messages for which the callback will be called.
+         * @param logMessageHandler Handler for messages. Null removes the handler.
+         */
+        void setLogMessageHandler(int maxVerbosityLevel, LogMessageHandler logMessageHandler);
+    }
+
     /**
      * Exception class thrown when TDLib error occurred while performing {@link #execute(TdApi.Function)}.
      */
@@ -81,7 +150,76 @@ public final class Client {
     }
 
     /**
-     * Sends a request to the TDLib.
+     * Exception class with which futures returned by {@link #sendAsync(TdApi.Function)} are completed
+     * when TDLib returns an error. The exception doesn't capture stack trace, because it is always created
+     * in the thread processing TDLib results and the trace wouldn't point to the caller anyway.
+     */
+    public static class TdlibException extends RuntimeException {
+        /**
+         * Original TDLib error returned in response to the query.
+         */
+        public final TdApi.Error error;
+
+        /**
+         * @param error TDLib error returned in response to the query.
+         */
+        public TdlibException(TdApi.Error error) {
+            super(error.code + ": " + error.message, null, false, false);
+            this.error = error;
+        }
+    }
+
+    /**
+     * Future completed with the result of a query sent by {@link #sendAsync(TdApi.Function)}.
+     * The future itself is registered as the result handler of the query, so sending a query asynchronously
+     * allocates nothing except the future. Cancellation of the future cancels the query.
+     *
+     * @param <R> Type of the query result.
+     */
+    public static class QueryFuture<R extends TdApi.Object> extends CompletableFuture<R> implements ResultHandler {
+        private final Client client;
+        private long queryId;
+
+        QueryFuture(Client client) {
+            this.client = client;
+        }
+
+        /**
+         * Returns identifier of the query.
+         *
+         * @return query identifier.
+         */
+        public long getQueryId() {
+            return queryId;
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean isCancelled = super.cancel(mayInterruptIfRunning);
+            if (isCancelled) {
+                client.cancel(queryId);
+            }
+            return isCancelled;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void onResult(TdApi.Object object) {
+            if (object instanceof TdApi.Error) {
+                completeExceptionally(new TdlibException((TdApi.Error) object));
+            } else {
+                complete((R) object);
+            }
+        }
+    }
+
+    /**
+     * Code of TdApi.Error passed to result handlers of queries which weren't answered before their deadline.
+     */
+    public static final int TIMEOUT_ERROR_CODE = 408;
+
+    /**
+     * Sends a request to the TDLib with the default timeout for the query type.
      *
      * @param query            Object representing a query to the TDLib.
      * @param resultHandler    Result handler with onResult method which will be called with result
@@ -90,13 +228,39 @@ public final class Client {
      * @param exceptionHandler Exception handler with onException method which will be called on
      *                         exception thrown from resultHandler. If it is null, then
      *                         defaultExceptionHandler will be called.
+     * @return identifier of the query, which can be passed to {@link #cancel(long)}.
+     * @see #setQueryTimeout(int, long)
      */
-    public void send(TdApi.Function query, ResultHandler resultHandler, ExceptionHandler exceptionHandler) {
+    public long send(TdApi.Function query, ResultHandler resultHandler, ExceptionHandler exceptionHandler) {
+        return send(query, resultHandler, exceptionHandler, getQueryTimeout(query.getConstructor()));
+    }
+
+    /**
+     * Sends a request to the TDLib with the specified timeout.
+     *
+     * @param query            Object representing a query to the TDLib.
+     * @param resultHandler    Result handler with onResult method which will be called with result
+     *                         of the query or with TdApi.Error as parameter. If it is null, nothing
+     *                         will be called.
+     * @param exceptionHandler Exception handler with onException method which will be called on
+     *                         exception thrown from resultHandler. If it is null, then
+     *                         defaultExceptionHandler will be called.
+     * @param timeoutMillis    Maximum time to wait for the result in milliseconds. If the result isn't received in time,
+     *                         resultHandler is called with TdApi.Error with code {@link #TIMEOUT_ERROR_CODE}
+     *                         and the result received later is ignored. Pass 0 to wait for the result indefinitely.
+     * @return identifier of the query, which can be passed to {@link #cancel(long)}.
+     */
+    public long send(TdApi.Function query, ResultHandler resultHandler, ExceptionHandler exceptionHandler, long timeoutMillis) {
         long queryId = currentQueryId.incrementAndGet();
         if (resultHandler != null) {
-            handlers.put(queryId, new Handler(resultHandler, exceptionHandler));
+            // the wrapper is allocated only if there is a custom exception handler
+            pendingQueries.put(queryId, exceptionHandler == null ? resultHandler : new Handler(resultHandler, exceptionHandler));
+            if (timeoutMillis > 0) {
+                timeoutWheel.schedule(nativeClientId, queryId, timeoutMillis);
+            }
         }
-        nativeClientSend(nativeClientId, queryId, query);
+        transport.send(nativeClientId, queryId, query);
+        return queryId;
     }
 
     /**
@@ -106,9 +270,49 @@ public final class Client {
      * @param resultHandler Result handler with onResult method which will be called with result
      *                      of the query or with TdApi.Error as parameter. If it is null, then
      *                      defaultExceptionHandler will be called.
+     * @return identifier of the query, which can be passed to {@link #cancel(long)}.
+     */
+    public long send(TdApi.Function query, ResultHandler resultHandler) {
+        return send(query, resultHandler, null);
+    }
+
+    /**
+     * Cancels waiting for the result of a query. The result handler of the query is removed
+     * and will not be called; the result, if TDLib still sends it, is dropped without processing.
+     * The query itself can't be recalled from TDLib and may still be executed.
+     *
+     * @param queryId Identifier of the query returned by send.
+     * @return true if the query was pending and has been cancelled; false if its result has already been handled.
+     */
+    public boolean cancel(long queryId) {
+        return pendingQueries.remove(queryId) != null;
+    }
+
+    /**
+     * Sends a request to the TDLib with the default timeout for the query type and returns a future of its result.
+     *
+     * @param query Object representing a query to the TDLib.
+     * @param <R>   Automatically deduced return type of the query.
+     * @return future, which is completed with the result of the query or with {@link TdlibException}
+     * if TDLib returns an error, including the timeout error.
      */
-    public void send(TdApi.Function query, ResultHandler resultHandler) {
-        send(query, resultHandler, null);
+    public <R extends TdApi.Object> QueryFuture<R> sendAsync(TdApi.Function<R> query) {
+        return sendAsync(query, getQueryTimeout(query.getConstructor()));
+    }
+
+    /**
+     * Sends a request to the TDLib with the specified timeout and returns a future of its result.
+     *
+     * @param query         Object representing a query to the TDLib.
+     * @param timeoutMillis Maximum time to wait for the result in milliseconds. Pass 0 to wait for the result indefinitely.
+     * @param <R>           Automatically deduced return type of the query.
+     * @return future, which is completed with the result of the query or with {@link TdlibException}
+     * if TDLib returns an error, including the timeout error.
+     */
+    public <R extends TdApi.Object> QueryFuture<R> sendAsync(TdApi.Function<R> query, long timeoutMillis) {
+        QueryFuture<R> future = new QueryFuture<R>(this);
+        future.queryId = send(query, future, null, timeoutMillis);
+        return future;
     }
 
     /**
@@ -121,7 +325,7 @@ public final class Client {
      */
     @SuppressWarnings("unchecked")
     public static <T extends TdApi.Object> T execute(TdApi.Function<T> query) throws ExecutionException {
-        TdApi.Object object = nativeClientExecute(query);
+        TdApi.Object object = getTransport().execute(query);
         if (object instanceof TdApi.Error) {
             throw new ExecutionException((TdApi.Error) object);
         }
@@ -158,23 +362,349 @@ public final class Client {
      * @param logMessageHandler Handler for messages that are added to the internal TDLib log. Pass null to remove the handler.
      */
     public static void setLogMessageHandler(int maxVerbosityLevel, LogMessageHandler logMessageHandler) {
-        nativeClientSetLogMessageHandler(maxVerbosityLevel, logMessageHandler);
+        getTransport().setLogMessageHandler(maxVerbosityLevel, logMessageHandler);
+    }
+
+    /**
+     * Sets the default timeout for queries of all types, which have no timeout set by {@link #setQueryTimeout(int, long)}.
+     *
+     * @param timeoutMillis Timeout in milliseconds. Pass 0 to wait for results indefinitely.
+     */
+    public static void setDefaultQueryTimeout(long timeoutMillis) {
+        defaultQueryTimeout = timeoutMillis;
+    }
+
+    /**
+     * Sets the default timeout for queries of the specified type.
+     *
+     * @param constructor   Identifier of the query type, i.e. value of CONSTRUCTOR field of the TdApi.Function subclass.
+     * @param timeoutMillis Timeout in milliseconds. Pass 0 to wait for results indefinitely, or a negative value
+     *                      to use the timeout set by {@link #setDefaultQueryTimeout(long)}.
+     */
+    public static void setQueryTimeout(int constructor, long timeoutMillis) {
+        synchronized (queryTimeoutsByConstructor) {
+            if (timeoutMillis < 0) {
+                queryTimeoutsByConstructor.remove(constructor);
+            } else {
+                queryTimeoutsByConstructor.put(constructor, timeoutMillis);
+            }
+            queryTimeouts = new QueryTimeouts(queryTimeoutsByConstructor);
+        }
+    }
+
+    /**
+     * Returns the default timeout for queries of the specified type.
+     *
+     * @param constructor Identifier of the query type.
+     * @return timeout in milliseconds or 0 if results are waited for indefinitely.
+     */
+    public static long getQueryTimeout(int constructor) {
+        QueryTimeouts timeouts = queryTimeouts;
+        int index = Arrays.binarySearch(timeouts.constructors, constructor);
+        return index >= 0 ? timeouts.timeouts[index] : defaultQueryTimeout;
+    }
+
+    /**
+     * Sets the dispatcher for result handlers and update handlers of all clients.
+     * The thread receiving events from TDLib only demultiplexes them and hands them to the dispatcher.
+     * Results of queries are partitioned by client, chat-scoped updates are additionally partitioned by chat,
+     * so events of the same chat are processed in order while independent chats are processed in parallel.
+     *
+     * @param dispatcher Dispatcher for events received from TDLib. Pass null to process events directly
+     *                   in the receiving thread.
+     */
+    public static void setDispatcher(Dispatcher dispatcher) {
+        Client.dispatcher = dispatcher;
+    }
+
+    /**
+     * Runs a task after all events dispatched before the call are processed.
+     * Query results and chat-scoped updates are processed in different partitions, so a result can be handled
+     * before updates which TDLib sent before it; called from the result handler, the method allows to observe
+     * the effect of these updates, for example of the updates sent in response to LoadChats.
+     * If events are processed in the receiving thread, the task is run immediately.
+     *
+     * @param task Task to be run after the events.
+     */
+    public static void runAfterDispatchedEvents(Runnable task) {
+        Dispatcher currentDispatcher = dispatcher;
+        if (currentDispatcher == null) {
+            task.run();
+        } else {
+            currentDispatcher.dispatchBarrier(task);
+        }
+    }
+
+    /**
+     * Sets the transport used by all clients, for example an in-process TDLib replacement for load testing.
+     * Must be called before any client is created and before any other static method is called.
+     *
+     * @param transport Transport for queries and events. Pass null to use the native TDLib.
+     */
+    public static void setTransport(Transport transport) {
+        synchronized (responseReceiver) {
+            if (responseReceiver.isRun) {
+                throw new IllegalStateException("Transport can't be changed after a client is created");
+            }
+            Client.transport = transport;
+        }
+    }
+
+    /**
+     * Returns number of queries of all clients waiting for a result.
+     *
+     * @return number of pending queries.
+     */
+    public static long getPendingQueryCount() {
+        long count = 0;
+        for (PendingQueryTable table : pendingQueriesByClientId) {
+            if (table != null) {
+                count += table.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Returns total number of events received from TDLib.
+     *
+     * @return number of received results and updates.
+     */
+    public static long getReceivedEventCount() {
+        return responseReceiver.receivedEventCount;
+    }
+
+    /**
+     * Returns number of batches of events received from TDLib.
+     *
+     * @return number of completed receive calls.
+     */
+    public static long getReceivedBatchCount() {
+        return responseReceiver.receivedBatchCount;
+    }
+
+    /**
+     * Returns fill ratio of the last batch of events received from TDLib. Ratio close to 1 means that events
+     * are produced faster than they are handled and the receiving thread is saturated.
+     *
+     * @return number of events in the last batch divided by the maximum batch size.
+     */
+    public static double getLastReceivedBatchFill() {
+        return (double) responseReceiver.lastBatchSize / ResponseReceiver.MAX_EVENTS;
+    }
+
+    /**
+     * Returns age of the oldest query of all clients waiting for a result. Scans the tables of pending queries,
+     * so it is intended for monitoring and not for frequent calls.
+     *
+     * @return time since the oldest pending query was sent in nanoseconds or 0 if there are no pending queries.
+     */
+    public static long getOldestPendingQueryAgeNanos() {
+        long oldest = Long.MAX_VALUE;
+        for (PendingQueryTable table : pendingQueriesByClientId) {
+            if (table != null) {
+                long tableOldest = table.getOldestAddedNanos();
+                if (tableOldest != Long.MAX_VALUE && (oldest == Long.MAX_VALUE || tableOldest - oldest < 0)) {
+                    oldest = tableOldest;
+                }
+            }
+        }
+        return oldest == Long.MAX_VALUE ? 0 : Math.max(0, System.nanoTime() - oldest);
+    }
+
+    /**
+     * Returns time the receiving thread has been handling the current batch of events. While the thread waits
+     * for events from TDLib the lag is 0; a growing lag means that the thread is blocked by handlers
+     * or by a full dispatcher queue, and events accumulate in TDLib.
+     *
+     * @return time since the current batch of events was received in nanoseconds or 0 if the thread waits for events.
+     */
+    public static long getReceiverLagNanos() {
+        long batchReceivedNanos = responseReceiver.batchReceivedNanos;
+        return batchReceivedNanos == 0 ? 0 : Math.max(0, System.nanoTime() - batchReceivedNanos);
+    }
+
+    private static Transport getTransport() {
+        Transport currentTransport = transport;
+        if (currentTransport == null) {
+            synchronized (responseReceiver) {
+                if (transport == null) {
+                    transport = new NativeTransport();
+                }
+                currentTransport = transport;
+            }
+        }
+        return currentTransport;
+    }
+
+    /**
+     * Returns identifier of the chat to which the update relates.
+     *
+     * @param object Update received from TDLib.
+     * @return chat identifier or 0 if the object isn't a chat-scoped update.
+     */
+    public static long getChatId(TdApi.Object object) {
+        switch (object.getConstructor()) {
+            case TdApi.UpdateNewChat.CONSTRUCTOR:
+                return ((TdApi.UpdateNewChat) object).chat.id;
+            case TdApi.UpdateNewMessage.CONSTRUCTOR:
+                return ((TdApi.UpdateNewMessage) object).message.chatId;
+            case TdApi.UpdateMessageSendSucceeded.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageSendSucceeded) object).message.chatId;
+            case TdApi.UpdateMessageSendFailed.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageSendFailed) object).message.chatId;
+            case TdApi.UpdateMessageSendAcknowledged.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageSendAcknowledged) object).chatId;
+            case TdApi.UpdateMessageContent.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageContent) object).chatId;
+            case TdApi.UpdateMessageEdited.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageEdited) object).chatId;
+            case TdApi.UpdateMessageIsPinned.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageIsPinned) object).chatId;
+            case TdApi.UpdateMessageInteractionInfo.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageInteractionInfo) object).chatId;
+            case TdApi.UpdateMessageContentOpened.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageContentOpened) object).chatId;
+            case TdApi.UpdateMessageMentionRead.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageMentionRead) object).chatId;
+            case TdApi.UpdateMessageUnreadReactions.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageUnreadReactions) object).chatId;
+            case TdApi.UpdateMessageFactCheck.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageFactCheck) object).chatId;
+            case TdApi.UpdateMessageLiveLocationViewed.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageLiveLocationViewed) object).chatId;
+            case TdApi.UpdateVideoPublished.CONSTRUCTOR:
+                return ((TdApi.UpdateVideoPublished) object).chatId;
+            case TdApi.UpdateChatTitle.CONSTRUCTOR:
+                return ((TdApi.UpdateChatTitle) object).chatId;
+            case TdApi.UpdateChatPhoto.CONSTRUCTOR:
+                return ((TdApi.UpdateChatPhoto) object).chatId;
+            case TdApi.UpdateChatAccentColors.CONSTRUCTOR:
+                return ((TdApi.UpdateChatAccentColors) object).chatId;
+            case TdApi.UpdateChatPermissions.CONSTRUCTOR:
+                return ((TdApi.UpdateChatPermissions) object).chatId;
+            case TdApi.UpdateChatLastMessage.CONSTRUCTOR:
+                return ((TdApi.UpdateChatLastMessage) object).chatId;
+            case TdApi.UpdateChatPosition.CONSTRUCTOR:
+                return ((TdApi.UpdateChatPosition) object).chatId;
+            case TdApi.UpdateChatAddedToList.CONSTRUCTOR:
+                return ((TdApi.UpdateChatAddedToList) object).chatId;
+            case TdApi.UpdateChatRemovedFromList.CONSTRUCTOR:
+                return ((TdApi.UpdateChatRemovedFromList) object).chatId;
+            case TdApi.UpdateChatReadInbox.CONSTRUCTOR:
+                return ((TdApi.UpdateChatReadInbox) object).chatId;
+            case TdApi.UpdateChatReadOutbox.CONSTRUCTOR:
+                return ((TdApi.UpdateChatReadOutbox) object).chatId;
+            case TdApi.UpdateChatActionBar.CONSTRUCTOR:
+                return ((TdApi.UpdateChatActionBar) object).chatId;
+            case TdApi.UpdateChatBusinessBotManageBar.CONSTRUCTOR:
+                return ((TdApi.UpdateChatBusinessBotManageBar) object).chatId;
+            case TdApi.UpdateChatAvailableReactions.CONSTRUCTOR:
+                return ((TdApi.UpdateChatAvailableReactions) object).chatId;
+            case TdApi.UpdateChatDraftMessage.CONSTRUCTOR:
+                return ((TdApi.UpdateChatDraftMessage) object).chatId;
+            case TdApi.UpdateChatEmojiStatus.CONSTRUCTOR:
+                return ((TdApi.UpdateChatEmojiStatus) object).chatId;
+            case TdApi.UpdateChatMessageSender.CONSTRUCTOR:
+                return ((TdApi.UpdateChatMessageSender) object).chatId;
+            case TdApi.UpdateChatMessageAutoDeleteTime.CONSTRUCTOR:
+                return ((TdApi.UpdateChatMessageAutoDeleteTime) object).chatId;
+            case TdApi.UpdateChatNotificationSettings.CONSTRUCTOR:
+                return ((TdApi.UpdateChatNotificationSettings) object).chatId;
+            case TdApi.UpdateChatPendingJoinRequests.CONSTRUCTOR:
+                return ((TdApi.UpdateChatPendingJoinRequests) object).chatId;
+            case TdApi.UpdateChatReplyMarkup.CONSTRUCTOR:
+                return ((TdApi.UpdateChatReplyMarkup) object).chatId;
+            case TdApi.UpdateChatBackground.CONSTRUCTOR:
+                return ((TdApi.UpdateChatBackground) object).chatId;
+            case TdApi.UpdateChatTheme.CONSTRUCTOR:
+                return ((TdApi.UpdateChatTheme) object).chatId;
+            case TdApi.UpdateChatUnreadMentionCount.CONSTRUCTOR:
+                return ((TdApi.UpdateChatUnreadMentionCount) object).chatId;
+            case TdApi.UpdateChatUnreadReactionCount.CONSTRUCTOR:
+                return ((TdApi.UpdateChatUnreadReactionCount) object).chatId;
+            case TdApi.UpdateChatVideoChat.CONSTRUCTOR:
+                return ((TdApi.UpdateChatVideoChat) object).chatId;
+            case TdApi.UpdateChatDefaultDisableNotification.CONSTRUCTOR:
+                return ((TdApi.UpdateChatDefaultDisableNotification) object).chatId;
+            case TdApi.UpdateChatHasProtectedContent.CONSTRUCTOR:
+                return ((TdApi.UpdateChatHasProtectedContent) object).chatId;
+            case TdApi.UpdateChatIsTranslatable.CONSTRUCTOR:
+                return ((TdApi.UpdateChatIsTranslatable) object).chatId;
+            case TdApi.UpdateChatIsMarkedAsUnread.CONSTRUCTOR:
+                return ((TdApi.UpdateChatIsMarkedAsUnread) object).chatId;
+            case TdApi.UpdateChatViewAsTopics.CONSTRUCTOR:
+                return ((TdApi.UpdateChatViewAsTopics) object).chatId;
+            case TdApi.UpdateChatBlockList.CONSTRUCTOR:
+                return ((TdApi.UpdateChatBlockList) object).chatId;
+            case TdApi.UpdateChatHasScheduledMessages.CONSTRUCTOR:
+                return ((TdApi.UpdateChatHasScheduledMessages) object).chatId;
+            case TdApi.UpdateChatOnlineMemberCount.CONSTRUCTOR:
+                return ((TdApi.UpdateChatOnlineMemberCount) object).chatId;
+            case TdApi.UpdateTopicMessageCount.CONSTRUCTOR:
+                return ((TdApi.UpdateTopicMessageCount) object).chatId;
+            case TdApi.UpdateForumTopic.CONSTRUCTOR:
+                return ((TdApi.UpdateForumTopic) object).chatId;
+            case TdApi.UpdateDeleteMessages.CONSTRUCTOR:
+                return ((TdApi.UpdateDeleteMessages) object).chatId;
+            case TdApi.UpdateChatAction.CONSTRUCTOR:
+                return ((TdApi.UpdateChatAction) object).chatId;
+            case TdApi.UpdateChatRevenueAmount.CONSTRUCTOR:
+                return ((TdApi.UpdateChatRevenueAmount) object).chatId;
+            case TdApi.UpdateAnimatedEmojiMessageClicked.CONSTRUCTOR:
+                return ((TdApi.UpdateAnimatedEmojiMessageClicked) object).chatId;
+            case TdApi.UpdateChatMember.CONSTRUCTOR:
+                return ((TdApi.UpdateChatMember) object).chatId;
+            case TdApi.UpdateNewChatJoinRequest.CONSTRUCTOR:
+                return ((TdApi.UpdateNewChatJoinRequest) object).chatId;
+            case TdApi.UpdateChatBoost.CONSTRUCTOR:
+                return ((TdApi.UpdateChatBoost) object).chatId;
+            case TdApi.UpdateMessageReaction.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageReaction) object).chatId;
+            case TdApi.UpdateMessageReactions.CONSTRUCTOR:
+                return ((TdApi.UpdateMessageReactions) object).chatId;
+            default:
+                return 0;
+        }
     }
 
     private static class ResponseReceiver implements Runnable {
         public boolean isRun = false;
+        // written only by the receiving thread
+        volatile long receivedEventCount;
+        volatile long receivedBatchCount;
+        volatile int lastBatchSize;
+        // time the current batch was received; 0 while the thread waits for events
+        volatile long batchReceivedNanos;
 
         @Override
         public void run() {
+            Transport currentTransport = getTransport();
             while (true) {
-                int resultN = nativeClientReceive(clientIds, eventIds, events, 100000.0 /*seconds*/);
+                batchReceivedNanos = 0;
+                int resultN = currentTransport.receive(clientIds, eventIds, events, 100000.0 /*seconds*/);
+                batchReceivedNanos = System.nanoTime();
+                lastBatchSize = resultN;
+                receivedEventCount += resultN;
+                receivedBatchCount++;
+                Dispatcher currentDispatcher = dispatcher;
                 for (int i = 0; i < resultN; i++) {
-                    processResult(clientIds[i], eventIds[i], events[i]);
+                    if (currentDispatcher == null) {
+                        processResult(clientIds[i], eventIds[i], events[i]);
+                    } else {
+                        dispatchResult(currentDispatcher, clientIds[i], eventIds[i], events[i]);
+                    }
                     events[i] = null;
                 }
             }
         }
 
+        private void dispatchResult(Dispatcher currentDispatcher, int clientId, long id, TdApi.Object object) {
+            long chatId = id == 0 ? getChatId(object) : 0;
+            long partitionKey = chatId == 0 ? clientId : chatId * 31 + clientId;
+            currentDispatcher.dispatch(partitionKey, () -> processResult(clientId, id, object));
+        }
+
         private void processResult(int clientId, long id, TdApi.Object object) {
             boolean isClosed = false;
             if (id == 0 && object instanceof TdApi.UpdateAuthorizationState) {
@@ -184,22 +714,9 @@ public final class Client {
                 }
             }
 
-            Handler handler = id == 0 ? updateHandlers.get(clientId) : handlers.remove(id);
+            Object handler = id == 0 ? updateHandlers.get(clientId) : removePendingQuery(clientId, id);
             if (handler != null) {
-                try {
-                    handler.resultHandler.onResult(object);
-                } catch (Throwable cause) {
-                    ExceptionHandler exceptionHandler = handler.exceptionHandler;
-                    if (exceptionHandler == null) {
-                        exceptionHandler = defaultExceptionHandlers.get(clientId);
-                    }
-                    if (exceptionHandler != null) {
-                        try {
-                            exceptionHandler.onException(cause);
-                        } catch (Throwable ignored) {
-                        }
-                    }
-                }
+                invokeHandler(clientId, handler, object);
             }
 
             if (isClosed) {
@@ -209,6 +726,31 @@ public final class Client {
             }
         }
 
+        private void invokeHandler(int clientId, Object handler, TdApi.Object object) {
+            ResultHandler resultHandler;
+            ExceptionHandler exceptionHandler;
+            if (handler instanceof Handler) {
+                resultHandler = ((Handler) handler).resultHandler;
+                exceptionHandler = ((Handler) handler).exceptionHandler;
+            } else {
+                resultHandler = (ResultHandler) handler;
+                exceptionHandler = null;
+            }
+            try {
+                resultHandler.onResult(object);
+            } catch (Throwable cause) {
+                if (exceptionHandler == null) {
+                    exceptionHandler = defaultExceptionHandlers.get(clientId);
+                }
+                if (exceptionHandler != null) {
+                    try {
+                        exceptionHandler.onException(cause);
+                    } catch (Throwable ignored) {
+                    }
+                }
+            }
+        }
+
         private static final int MAX_EVENTS = 1000;
         private final int[] clientIds = new int[MAX_EVENTS];
         private final long[] eventIds = new long[MAX_EVENTS];
@@ -216,14 +758,22 @@ public final class Client {
     }
 
     private final int nativeClientId;
+    private final AtomicLong currentQueryId = new AtomicLong();
+    private final PendingQueryTable pendingQueries = new PendingQueryTable();
 
     private static final ConcurrentHashMap<Integer, ExceptionHandler> defaultExceptionHandlers = new ConcurrentHashMap<Integer, ExceptionHandler>();
     private static final ConcurrentHashMap<Integer, Handler> updateHandlers = new ConcurrentHashMap<Integer, Handler>();
-    private static final ConcurrentHashMap<Long, Handler> handlers = new ConcurrentHashMap<Long, Handler>();
-    private static final AtomicLong currentQueryId = new AtomicLong();
+    private static volatile PendingQueryTable[] pendingQueriesByClientId = new PendingQueryTable[16];
     private static final AtomicLong clientCount = new AtomicLong();
 
     private static final ResponseReceiver responseReceiver = new ResponseReceiver();
+    private static final QueryTimeoutWheel timeoutWheel =
+            new QueryTimeoutWheel(Client::onQueryExpired, Client::isQueryPending, 10, 1024);
+    private static final TreeMap<Integer, Long> queryTimeoutsByConstructor = new TreeMap<Integer, Long>();
+    private static volatile QueryTimeouts queryTimeouts = new QueryTimeouts(queryTimeoutsByConstructor);
+    private static volatile long defaultQueryTimeout;
+    private static volatile Dispatcher dispatcher;
+    private static volatile Transport transport;
 
     private static class Handler {
         final ResultHandler resultHandler;
@@ -235,9 +785,66 @@ public final class Client {
         }
     }
 
+    // sorted snapshot of per-type timeouts, which allows lookup without boxing on each query
+    private static class QueryTimeouts {
+        final int[] constructors;
+        final long[] timeouts;
+
+        QueryTimeouts(TreeMap<Integer, Long> timeoutsByConstructor) {
+            constructors = new int[timeoutsByConstructor.size()];
+            timeouts = new long[timeoutsByConstructor.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Long> entry : timeoutsByConstructor.entrySet()) {
+                constructors[i] = entry.getKey();
+                timeouts[i] = entry.getValue();
+                i++;
+            }
+        }
+    }
+
+    private static void onQueryExpired(int clientId, long queryId) {
+        Object handler = removePendingQuery(clientId, queryId);
+        if (handler == null) {
+            return; // the query has already been answered
+        }
+        TdApi.Error error = new TdApi.Error(TIMEOUT_ERROR_CODE, "Request timeout");
+        Dispatcher currentDispatcher = dispatcher;
+        if (currentDispatcher == null) {
+            responseReceiver.invokeHandler(clientId, handler, error);
+        } else {
+            currentDispatcher.dispatch(clientId, () -> responseReceiver.invokeHandler(clientId, handler, error));
+        }
+    }
+
+    private static void registerPendingQueries(int clientId, PendingQueryTable table) {
+        synchronized (responseReceiver) {
+            PendingQueryTable[] tables = pendingQueriesByClientId;
+            if (clientId >= tables.length) {
+                tables = Arrays.copyOf(tables, Math.max(clientId + 1, tables.length * 2));
+            } else {
+                tables = tables.clone();
+            }
+            tables[clientId] = table;
+            pendingQueriesByClientId = tables;
+        }
+    }
+
+    private static boolean isQueryPending(int clientId, long queryId) {
+        PendingQueryTable[] tables = pendingQueriesByClientId;
+        PendingQueryTable table = clientId < tables.length ? tables[clientId] : null;
+        return table != null && table.contains(queryId);
+    }
+
+    private static Object removePendingQuery(int clientId, long queryId) {
+        PendingQueryTable[] tables = pendingQueriesByClientId;
+        PendingQueryTable table = clientId < tables.length ? tables[clientId] : null;
+        return table == null ? null : table.remove(queryId);
+    }
+
     private Client(ResultHandler updateHandler, ExceptionHandler updateExceptionHandler, ExceptionHandler defaultExceptionHandler) {
         clientCount.incrementAndGet();
-        nativeClientId = createNativeClient();
+        nativeClientId = getTransport().createClient();
+        registerPendingQueries(nativeClientId, pendingQueries);
         if (updateHandler != null) {
             updateHandlers.put(nativeClientId, new Handler(updateHandler, updateExceptionHandler));
         }
@@ -247,6 +854,41 @@ public final class Client {
         send(new TdApi.GetOption("version"), null, null);
     }
 
+    private static final class NativeTransport implements Transport {
+        static {
+            try {
+                System.loadLibrary("tdjni");
+            } catch (UnsatisfiedLinkError e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public int createClient() {
+            return createNativeClient();
+        }
+
+        @Override
+        public void send(int clientId, long queryId, TdApi.Function function) {
+            nativeClientSend(clientId, queryId, function);
+        }
+
+        @Override
+        public int receive(int[] clientIds, long[] eventIds, TdApi.Object[] events, double timeout) {
+            return nativeClientReceive(clientIds, eventIds, events, timeout);
+        }
+
+        @Override
+        public TdApi.Object execute(TdApi.Function function) {
+            return nativeClientExecute(function);
+        }
+
+        @Override
+        public void setLogMessageHandler(int maxVerbosityLevel, LogMessageHandler logMessageHandler) {
+            nativeClientSetLogMessageHandler(maxVerbosityLevel, logMessageHandler);
+        }
+    }
+
     private static native int createNativeClient();
 
     private static native void nativeClientSend(int nativeClientId, long eventId, TdApi.Function function);
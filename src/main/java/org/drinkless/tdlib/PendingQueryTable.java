@@ -0,0 +1,189 @@
+package org.drinkless.tdlib;
+
+/**
+ * Table of handlers of pending queries of a single client, keyed by query identifier.
+ * Keys are stored as primitive longs in open-addressing segments, so neither adding nor removing
+ * a handler boxes the key or allocates table entries. Query identifiers are positive
+ * and increase monotonically, so consecutive queries are spread evenly over segments; inside a segment
+ * identifiers are scrambled to avoid long probe sequences formed by runs of consecutive keys.
+ * Along with a handler the table keeps the time the query was added, which allows to find the age
+ * of the oldest pending query.
+ */
+final class PendingQueryTable {
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+    private static final int INITIAL_SEGMENT_CAPACITY = 64;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    PendingQueryTable() {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    /**
+     * Adds handler of a query.
+     *
+     * @param queryId Positive query identifier, which isn't present in the table.
+     * @param handler Handler of the query result.
+     */
+    void put(long queryId, Object handler) {
+        long addedNanos = System.nanoTime();
+        segments[(int) queryId & (SEGMENT_COUNT - 1)].put(queryId, handler, addedNanos);
+    }
+
+    /**
+     * Removes handler of a query.
+     *
+     * @param queryId Query identifier.
+     * @return removed handler or null if there is no handler for the query.
+     */
+    Object remove(long queryId) {
+        return segments[(int) queryId & (SEGMENT_COUNT - 1)].remove(queryId);
+    }
+
+    /**
+     * Checks whether a query is still pending.
+     *
+     * @param queryId Query identifier.
+     * @return true if the table has a handler for the query.
+     */
+    boolean contains(long queryId) {
+        return segments[(int) queryId & (SEGMENT_COUNT - 1)].contains(queryId);
+    }
+
+    /**
+     * Returns number of pending queries.
+     *
+     * @return number of handlers in the table.
+     */
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the time the oldest pending query was added. Scans all segments, so it is intended
+     * for monitoring and not for the query path.
+     *
+     * @return {@link System#nanoTime()} when the oldest handler was added or Long.MAX_VALUE if the table is empty.
+     */
+    long getOldestAddedNanos() {
+        long oldest = Long.MAX_VALUE;
+        for (Segment segment : segments) {
+            long segmentOldest = segment.getOldestAddedNanos();
+            if (segmentOldest != Long.MAX_VALUE && (oldest == Long.MAX_VALUE || segmentOldest - oldest < 0)) {
+                oldest = segmentOldest;
+            }
+        }
+        return oldest;
+    }
+
+    private static int hash(long key) {
+        long h = (key >>> SEGMENT_BITS) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static final class Segment {
+        private long[] keys = new long[INITIAL_SEGMENT_CAPACITY];
+        private Object[] values = new Object[INITIAL_SEGMENT_CAPACITY];
+        private long[] addedNanos = new long[INITIAL_SEGMENT_CAPACITY];
+        private int size;
+
+        synchronized void put(long key, Object value, long added) {
+            if (2 * (size + 1) > keys.length) {
+                resize();
+            }
+            insert(keys, values, addedNanos, key, value, added);
+            size++;
+        }
+
+        synchronized Object remove(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == 0) {
+                    return null;
+                }
+                slot = (slot + 1) & mask;
+            }
+            Object value = values[slot];
+            size--;
+
+            // backward shift deletion keeps probe sequences unbroken without tombstones
+            int hole = slot;
+            slot = (slot + 1) & mask;
+            while (keys[slot] != 0) {
+                int home = hash(keys[slot]) & mask;
+                if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                    keys[hole] = keys[slot];
+                    values[hole] = values[slot];
+                    addedNanos[hole] = addedNanos[slot];
+                    hole = slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[hole] = 0;
+            values[hole] = null;
+            return value;
+        }
+
+        synchronized boolean contains(long key) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != key) {
+                if (keys[slot] == 0) {
+                    return false;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return true;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long getOldestAddedNanos() {
+            // query identifiers increase with time, so the smallest key is the oldest query
+            long oldestKey = Long.MAX_VALUE;
+            long oldest = Long.MAX_VALUE;
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0 && keys[i] < oldestKey) {
+                    oldestKey = keys[i];
+                    oldest = addedNanos[i];
+                }
+            }
+            return oldest;
+        }
+
+        private void resize() {
+            long[] newKeys = new long[keys.length * 2];
+            Object[] newValues = new Object[values.length * 2];
+            long[] newAddedNanos = new long[addedNanos.length * 2];
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != 0) {
+                    insert(newKeys, newValues, newAddedNanos, keys[i], values[i], addedNanos[i]);
+                }
+            }
+            keys = newKeys;
+            values = newValues;
+            addedNanos = newAddedNanos;
+        }
+
+        private static void insert(long[] keys, Object[] values, long[] addedNanos, long key, Object value, long added) {
+            int mask = keys.length - 1;
+            int slot = hash(key) & mask;
+            while (keys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            addedNanos[slot] = added;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package org.drinkless.tdlib;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel tracking deadlines of pending queries.
+ * Scheduling a deadline appends three primitives to the bucket of the tick at which the deadline expires,
+ * so no task or timer object is allocated per query. Answered queries aren't looked for in the wheel on completion:
+ * their entries are discarded when the bucket is processed, or earlier, when the bucket is full and
+ * the entries of queries which are no longer pending are purged before the bucket grows. So the capacity
+ * of a bucket stays within about twice the peak number of its pending queries instead of growing with all queries
+ * sent within the timeout; answered entries remain only until the bucket fills up again.
+ * A single daemon thread advances the wheel and reports expired queries to the expiration handler.
+ */
+final class QueryTimeoutWheel {
+    /**
+     * Handler of queries whose deadline has expired.
+     */
+    interface ExpirationHandler {
+        void onQueryExpired(int clientId, long queryId);
+    }
+
+    /**
+     * Checks whether a query still waits for the result, so its entry must be kept in the wheel.
+     */
+    interface PendingQueryFilter {
+        boolean isQueryPending(int clientId, long queryId);
+    }
+
+    private final ExpirationHandler expirationHandler;
+    private final long tickNanos;
+    private final Bucket[] buckets;
+    private final long startNanos = System.nanoTime();
+    private long processedTick;
+    // checked without the lock on each scheduled query; the lock is taken only to start the thread
+    private volatile boolean isRun;
+
+    QueryTimeoutWheel(ExpirationHandler expirationHandler, PendingQueryFilter pendingQueryFilter, long tickMillis,
+                      int bucketCount) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("bucketCount must be a power of 2");
+        }
+        this.expirationHandler = expirationHandler;
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.buckets = new Bucket[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            buckets[i] = new Bucket(pendingQueryFilter);
+        }
+    }
+
+    /**
+     * Schedules expiration of a query.
+     *
+     * @param clientId      Identifier of the client which sent the query.
+     * @param queryId       Identifier of the query.
+     * @param timeoutMillis Time after which the query expires in milliseconds.
+     */
+    void schedule(int clientId, long queryId, long timeoutMillis) {
+        if (!isRun) {
+            ensureStarted();
+        }
+        long deadlineNanos = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        // round up, so that a query never expires earlier than requested
+        long deadlineTick = (deadlineNanos + tickNanos - 1) / tickNanos;
+        buckets[(int) deadlineTick & (buckets.length - 1)].add(clientId, queryId, deadlineTick);
+    }
+
+    private synchronized void ensureStarted() {
+        if (!isRun) {
+            Thread timeoutThread = new Thread(this::run, "TDLib timeout thread");
+            timeoutThread.setDaemon(true);
+            timeoutThread.start();
+            isRun = true;
+        }
+    }
+
+    private void run() {
+        while (true) {
+            long currentTick = (System.nanoTime() - startNanos) / tickNanos;
+            while (processedTick < currentTick) {
+                processedTick++;
+                buckets[(int) processedTick & (buckets.length - 1)].expire(processedTick, expirationHandler);
+            }
+            LockSupport.parkNanos(tickNanos - (System.nanoTime() - startNanos) % tickNanos);
+        }
+    }
+
+    private static final class Bucket {
+        private final PendingQueryFilter pendingQueryFilter;
+        private int[] clientIds = new int[16];
+        private long[] queryIds = new long[16];
+        private long[] deadlineTicks = new long[16];
+        private int size;
+
+        // the expired entries are collected here to call the handler outside of the lock
+        private int[] expiredClientIds = new int[16];
+        private long[] expiredQueryIds = new long[16];
+
+        Bucket(PendingQueryFilter pendingQueryFilter) {
+            this.pendingQueryFilter = pendingQueryFilter;
+        }
+
+        synchronized void add(int clientId, long queryId, long deadlineTick) {
+            if (size == queryIds.length) {
+                purgeAnswered();
+                // grow only if at least half of the entries are still pending, so purging is amortized
+                if (2 * size > queryIds.length) {
+                    int capacity = queryIds.length * 2;
+                    clientIds = Arrays.copyOf(clientIds, capacity);
+                    queryIds = Arrays.copyOf(queryIds, capacity);
+                    deadlineTicks = Arrays.copyOf(deadlineTicks, capacity);
+                }
+            }
+            clientIds[size] = clientId;
+            queryIds[size] = queryId;
+            deadlineTicks[size] = deadlineTick;
+            size++;
+        }
+
+        private void purgeAnswered() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                if (pendingQueryFilter.isQueryPending(clientIds[i], queryIds[i])) {
+                    clientIds[kept] = clientIds[i];
+                    queryIds[kept] = queryIds[i];
+                    deadlineTicks[kept] = deadlineTicks[i];
+                    kept++;
+                }
+            }
+            size = kept;
+        }
+
+        void expire(long currentTick, ExpirationHandler expirationHandler) {
+            int expiredCount = 0;
+            synchronized (this) {
+                int kept = 0;
+                for (int i = 0; i < size; i++) {
+                    if (deadlineTicks[i] <= currentTick) {
+                        if (expiredCount == expiredQueryIds.length) {
+                            expiredClientIds = Arrays.copyOf(expiredClientIds, expiredCount * 2);
+                            expiredQueryIds = Arrays.copyOf(expiredQueryIds, expiredCount * 2);
+                        }
+                        expiredClientIds[expiredCount] = clientIds[i];
+                        expiredQueryIds[expiredCount] = queryIds[i];
+                        expiredCount++;
+                    } else {
+                        // the deadline is in one of the next rounds of the wheel
+                        clientIds[kept] = clientIds[i];
+                        queryIds[kept] = queryIds[i];
+                        deadlineTicks[kept] = deadlineTicks[i];
+                        kept++;
+                    }
+                }
+                size = kept;
+            }
+            for (int i = 0; i < expiredCount; i++) {
+                try {
+                    expirationHandler.onQueryExpired(expiredClientIds[i], expiredQueryIds[i]);
+                } catch (Throwable ignored) {
+                }
+            }
+        }
+    }
+}
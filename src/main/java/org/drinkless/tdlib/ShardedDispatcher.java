@@ -0,0 +1,249 @@
+package org.drinkless.tdlib;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Dispatcher which processes events received from TDLib on a fixed pool of worker threads.
+ * Each partition key is always mapped to the same worker, so events with equal keys are processed
+ * in the order they were dispatched, while events with different keys are processed in parallel.
+ */
+public final class ShardedDispatcher implements Client.Dispatcher, AutoCloseable {
+    private static final long CLOSE_TIMEOUT_MILLIS = 10000;
+
+    private final Worker[] workers;
+    private final Thread[] threads;
+    private volatile boolean isClosed = false;
+    // set after the worker threads stopped; from then on queued events are processed by the threads adding them
+    private volatile boolean isTerminated = false;
+
+    /**
+     * Creates new ShardedDispatcher and starts its worker threads.
+     *
+     * @param threadCount   Number of worker threads.
+     * @param queueCapacity Maximum number of events waiting for processing in the queue of a worker.
+     *                      The receiving thread is blocked while the queue of the target worker is full.
+     */
+    public ShardedDispatcher(int threadCount, int queueCapacity) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount must be positive");
+        }
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity must be positive");
+        }
+        workers = new Worker[threadCount];
+        threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            workers[i] = new Worker(queueCapacity);
+            threads[i] = new Thread(workers[i], "TDLib dispatcher thread #" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    @Override
+    public void dispatch(long partitionKey, Runnable task) {
+        if (isClosed) {
+            runTask(task);
+            return;
+        }
+        Worker worker = workers[shardOf(partitionKey, workers.length)];
+        try {
+            worker.queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while dispatching TDLib event", e);
+        }
+        worker.dispatchedCount.incrementAndGet();
+        if (isTerminated) {
+            // the worker could have stopped before the event was added, so nobody else would process it
+            worker.drain();
+        }
+    }
+
+    /**
+     * Schedules a task to be run after all events dispatched before the call are processed by every worker.
+     * Doesn't use the queues of the workers, so never blocks; the task is run by the worker finishing last.
+     */
+    @Override
+    public void dispatchBarrier(Runnable task) {
+        Barrier barrier = new Barrier(task, workers.length);
+        for (Worker worker : workers) {
+            worker.await(barrier);
+        }
+    }
+
+    /**
+     * Returns total number of events waiting for processing in all workers.
+     *
+     * @return number of queued events.
+     */
+    public int getQueueSize() {
+        int size = 0;
+        for (Worker worker : workers) {
+            size += worker.queue.size();
+        }
+        return size;
+    }
+
+    /**
+     * Stops all worker threads after they process already queued events and waits for them up to 10 seconds.
+     * Events left in the queues are then processed in the calling thread and pending barriers are released.
+     * Events dispatched after the call are processed in the dispatching thread.
+     */
+    @Override
+    public void close() {
+        isClosed = true;
+        for (Worker worker : workers) {
+            worker.isRun = false;
+            worker.queue.offer(() -> {
+            });
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_TIMEOUT_MILLIS);
+        boolean isInterrupted = false;
+        for (Thread thread : threads) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remainingMillis <= 0) {
+                break;
+            }
+            try {
+                thread.join(remainingMillis);
+            } catch (InterruptedException e) {
+                isInterrupted = true;
+                break;
+            }
+        }
+        isTerminated = true;
+        for (Worker worker : workers) {
+            worker.drain();
+            worker.releaseAllBarriers();
+        }
+        if (isInterrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static int shardOf(long partitionKey, int shardCount) {
+        long hash = partitionKey * 0x9E3779B97F4A7C15L;
+        return (int) ((hash >>> 33) % shardCount);
+    }
+
+    private static void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private static final class Barrier {
+        private final Runnable task;
+        private final AtomicInteger remaining;
+
+        Barrier(Runnable task, int count) {
+            this.task = task;
+            this.remaining = new AtomicInteger(count);
+        }
+
+        void arrive() {
+            if (remaining.decrementAndGet() == 0) {
+                task.run();
+            }
+        }
+    }
+
+    private static final class BarrierWaiter {
+        final Barrier barrier;
+        final long processedCount;
+
+        BarrierWaiter(Barrier barrier, long processedCount) {
+            this.barrier = barrier;
+            this.processedCount = processedCount;
+        }
+    }
+
+    private final class Worker implements Runnable {
+        private final BlockingQueue<Runnable> queue;
+        private final AtomicLong dispatchedCount = new AtomicLong();
+        // written only by the worker thread
+        private volatile long processedCount;
+        private final Queue<BarrierWaiter> barrierWaiters = new ConcurrentLinkedQueue<BarrierWaiter>();
+        private volatile boolean isRun = true;
+
+        Worker(int queueCapacity) {
+            queue = new LinkedBlockingQueue<Runnable>(queueCapacity);
+        }
+
+        void await(Barrier barrier) {
+            BarrierWaiter waiter = new BarrierWaiter(barrier, dispatchedCount.get());
+            if (isReleased(waiter)) {
+                barrier.arrive();
+                return;
+            }
+            barrierWaiters.add(waiter);
+            // the worker could have processed the events or stopped before the waiter was added
+            if (isReleased(waiter) && barrierWaiters.remove(waiter)) {
+                barrier.arrive();
+            }
+        }
+
+        private boolean isReleased(BarrierWaiter waiter) {
+            return processedCount >= waiter.processedCount || isTerminated;
+        }
+
+        @Override
+        public void run() {
+            long processed = 0;
+            while (true) {
+                Runnable task;
+                try {
+                    task = isRun ? queue.take() : queue.poll();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == null) {
+                    return;
+                }
+                runTask(task);
+                processedCount = ++processed;
+                if (!barrierWaiters.isEmpty()) {
+                    releaseBarriers(processed);
+                }
+            }
+        }
+
+        // processes events left after the worker thread stopped; may be called by several threads at once
+        void drain() {
+            Runnable task;
+            while ((task = queue.poll()) != null) {
+                runTask(task);
+            }
+        }
+
+        void releaseAllBarriers() {
+            BarrierWaiter waiter;
+            while ((waiter = barrierWaiters.poll()) != null) {
+                arrive(waiter);
+            }
+        }
+
+        private void releaseBarriers(long processed) {
+            for (BarrierWaiter waiter : barrierWaiters) {
+                if (waiter.processedCount <= processed && barrierWaiters.remove(waiter)) {
+                    arrive(waiter);
+                }
+            }
+        }
+
+        private void arrive(BarrierWaiter waiter) {
+            try {
+                waiter.barrier.arrive();
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+}